@@ -0,0 +1,850 @@
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Size- or weight-bounded cache using the window TinyLFU policy. New entries land in
+// a small LRU "window"; when the window overflows its oldest entry becomes a
+// candidate for the main space, a segmented LRU split into probation and protected
+// queues. The candidate is only admitted if the frequency sketch says it is more
+// popular than the probation victim it would replace, so one-hit wonders cannot
+// flush hot keys. All budgets are in weight units; without a weigher every entry
+// weighs 1.
+//
+// Safe for concurrent use. Entries live in a ConcurrentHashMap so reads never lock;
+// a hit is recorded in a lossy striped ReadBuffer and the policy (queues, sketch,
+// weights) is only touched under evictionLock, either by a writer or by the reader
+// that found its buffer stripe full.
+//
+// Loads can also run asynchronously on the configured executor (getAsync), and with
+// refreshAfterWrite a hit on an entry older than the interval returns the current
+// value immediately while a background reload replaces it.
+//
+// expireAfterWrite/expireAfterAccess entries are tracked in a hierarchical
+// TimerWheel that is advanced whenever the policy is maintained, so expired entries
+// are removed without a scan or a timer per entry. Reads treat an expired entry as
+// absent even before the wheel gets to it.
+//
+// Hits, misses, load latency and evictions by cause are recorded in a LongAdder-based
+// StatsCounter; stats() returns an immutable snapshot.
+class BoundedCache<K, V> {
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.80;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final SingleFlight<K, V> loads = new SingleFlight<>();
+    // Kept apart from loads: a refresh does not insert, so a miss must never join one
+    private final SingleFlight<K, V> refreshes = new SingleFlight<>();
+
+    // Guarded by evictionLock
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedQueue = new AccessOrderDeque<>();
+    private final TimerWheel<K, V> timerWheel;
+    private long windowWeightedSize;
+    private long protectedWeightedSize;
+
+    // Written under evictionLock, readable by anyone
+    private volatile long weightedSize;
+
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long refreshAfterWriteNanos;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder refreshFailureCount = new LongAdder();
+    private final StatsCounter stats = new StatsCounter();
+
+    private BoundedCache(Builder<K, V> builder) {
+        this.weigher = builder.weigher;
+        this.maximum = builder.maximum;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.executor = builder.executor;
+        this.ticker = builder.ticker;
+        this.timerWheel = expires() ? new TimerWheel<>(ticker.read()) : null;
+        this.windowMaximum = Math.max(1, (long) (maximum * WINDOW_PERCENT));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_PERCENT);
+        sketch.ensureCapacity(builder.expectedSize());
+    }
+
+    public static <K, V> Builder<K, V> newBuilder() {
+        return new Builder<>();
+    }
+
+    // On a miss exactly one caller per key runs the loader; concurrent callers for the
+    // same key wait for its result (see coalescedLoadCount)
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> node = lookup(key);
+        if (node != null) {
+            stats.recordHits(1);
+            refreshIfNeeded(node, loader);
+            return node.value;
+        }
+        stats.recordMisses(1);
+        return loads.load(key, k -> loadAndPut(k, loader));
+    }
+
+    // Completes immediately on a hit; on a miss the loader runs on the cache's executor,
+    // shared with any other get or getAsync already loading the same key
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> node = lookup(key);
+        if (node != null) {
+            stats.recordHits(1);
+            refreshIfNeeded(node, loader);
+            return CompletableFuture.completedFuture(node.value);
+        }
+        stats.recordMisses(1);
+        return loads.loadAsync(key,
+                k -> CompletableFuture.supplyAsync(() -> loadAndPut(k, loader), executor));
+    }
+
+    // Returns the values for keys in iteration order. All misses are handed to
+    // batchLoader in a single call, which may return fewer keys than requested; those
+    // are left out of the result. The batch counts as one load in the statistics.
+    public Map<K, V> getAll(Iterable<? extends K> keys,
+            Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> batchLoader) {
+        Map<K, V> found = new HashMap<>();
+        Set<K> misses = new LinkedHashSet<>();
+        int hits = 0;
+        for (K key : keys) {
+            if (found.containsKey(key) || misses.contains(key)) {
+                continue;
+            }
+            Node<K, V> node = lookup(key);
+            if (node != null) {
+                found.put(key, node.value);
+                hits++;
+            } else {
+                misses.add(key);
+            }
+        }
+        stats.recordHits(hits);
+        stats.recordMisses(misses.size());
+
+        if (!misses.isEmpty()) {
+            // Values another thread installed while the batch was loading are kept
+            Map<K, V> installed = putAllIfAbsent(timedBatchLoad(misses, batchLoader));
+            for (Map.Entry<K, V> entry : installed.entrySet()) {
+                if (misses.contains(entry.getKey())) {
+                    found.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    public V getIfPresent(K key) {
+        Node<K, V> node = lookup(key);
+        if (node == null) {
+            stats.recordMisses(1);
+            return null;
+        }
+        stats.recordHits(1);
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, false);
+    }
+
+    // Returns the existing value, or null if the mapping was added
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    // Adds or replaces all mappings under one eviction-lock acquisition
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        evictionLock.lock();
+        try {
+            maintenance();
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                K key = Objects.requireNonNull(entry.getKey());
+                V value = Objects.requireNonNull(entry.getValue());
+                putLocked(key, value, weigh(key, value), false);
+            }
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Visits live entries without recording them as reads; weakly consistent with
+    // concurrent updates, like iterating a ConcurrentHashMap
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        long now = expires() ? ticker.read() : 0L;
+        for (Node<K, V> node : data.values()) {
+            if (!expires() || !hasExpired(node, now)) {
+                action.accept(node.key, node.value);
+            }
+        }
+    }
+
+    public V invalidate(K key) {
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long size() {
+        return data.size();
+    }
+
+    // Sum of the weights of all entries; equals size() when no weigher is set
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    public long maximum() {
+        return maximum;
+    }
+
+    // Entries evicted by the size or weight bound
+    public long evictionCount() {
+        return stats.evictionCount(RemovalCause.SIZE);
+    }
+
+    // Weight of all entries evicted or expired
+    public long evictionWeight() {
+        return stats.evictionWeight();
+    }
+
+    // Loader invocations made by get
+    public long loadCount() {
+        return loads.loadCount();
+    }
+
+    // Misses that waited on another thread's in-flight load instead of loading
+    public long coalescedLoadCount() {
+        return loads.coalescedCount();
+    }
+
+    // Background reloads started by refreshAfterWrite, not counted in loadCount
+    public long refreshCount() {
+        return refreshCount.sum();
+    }
+
+    // Refreshes whose loader threw, returned null or could not be scheduled; the entry
+    // keeps its current value
+    public long refreshFailureCount() {
+        return refreshFailureCount.sum();
+    }
+
+    // Entries removed by expireAfterWrite/expireAfterAccess, not counted in evictionCount
+    public long expirationCount() {
+        return stats.evictionCount(RemovalCause.EXPIRED);
+    }
+
+    public CacheStats stats() {
+        return stats.snapshot(size(), weightedSize());
+    }
+
+    public void clear() {
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            for (Node<K, V> node : data.values()) {
+                node.queue = Queue.DEAD;
+            }
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            if (timerWheel != null) {
+                timerWheel.clear();
+            }
+            weightedSize = 0;
+            windowWeightedSize = 0;
+            protectedWeightedSize = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Applies buffered reads to the policy and removes expired entries
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Returns the live node for key and records the read, or null if absent or expired
+    private Node<K, V> lookup(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (expires()) {
+            long now = ticker.read();
+            if (hasExpired(node, now)) {
+                return null;
+            }
+            if (expireAfterAccessNanos > 0) {
+                node.accessTime = now;
+            }
+        }
+        afterRead(node);
+        return node;
+    }
+
+    private boolean expires() {
+        return (expireAfterWriteNanos > 0) || (expireAfterAccessNanos > 0);
+    }
+
+    private boolean hasExpired(Node<K, V> node, long now) {
+        return ((expireAfterWriteNanos > 0) && ((now - node.writeTime) >= expireAfterWriteNanos))
+                || ((expireAfterAccessNanos > 0) && ((now - node.accessTime) >= expireAfterAccessNanos));
+    }
+
+    private long expirationTime(Node<K, V> node) {
+        long time = Long.MAX_VALUE;
+        if (expireAfterWriteNanos > 0) {
+            time = node.writeTime + expireAfterWriteNanos;
+        }
+        if (expireAfterAccessNanos > 0) {
+            time = Math.min(time, node.accessTime + expireAfterAccessNanos);
+        }
+        return time;
+    }
+
+    private V loadAndPut(K key, Function<? super K, ? extends V> loader) {
+        // A previous leader may have finished between our miss and joining the flight
+        Node<K, V> node = lookup(key);
+        if (node != null) {
+            return node.value;
+        }
+        V loaded = timedLoad(key, loader);
+        if (loaded != null) {
+            V existing = putIfAbsent(key, loaded);
+            if (existing != null) {
+                loaded = existing;
+            }
+        }
+        return loaded;
+    }
+
+    private V timedLoad(K key, Function<? super K, ? extends V> loader) {
+        long start = System.nanoTime();
+        V loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        if (loaded == null) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+        } else {
+            stats.recordLoadSuccess(System.nanoTime() - start);
+        }
+        return loaded;
+    }
+
+    private Map<? extends K, ? extends V> timedBatchLoad(Set<K> keys,
+            Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> batchLoader) {
+        long start = System.nanoTime();
+        Map<? extends K, ? extends V> loaded;
+        try {
+            loaded = batchLoader.apply(Collections.unmodifiableSet(keys));
+        } catch (RuntimeException | Error e) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        if (loaded == null) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            return Collections.emptyMap();
+        }
+        stats.recordLoadSuccess(System.nanoTime() - start);
+        return loaded;
+    }
+
+    private void refreshIfNeeded(Node<K, V> node, Function<? super K, ? extends V> loader) {
+        if (refreshAfterWriteNanos <= 0
+                || (ticker.read() - node.writeTime) < refreshAfterWriteNanos
+                || refreshes.isLoading(node.key)) {
+            return;
+        }
+        refreshCount.increment();
+        K key = node.key;
+        refreshes.loadAsync(key, k -> CompletableFuture.supplyAsync(() -> timedLoad(k, loader), executor))
+                .whenComplete((value, error) -> {
+                    if (error != null || value == null) {
+                        refreshFailureCount.increment();
+                    } else {
+                        replaceIfSame(key, node, value);
+                    }
+                });
+    }
+
+    // Installs a refreshed value unless the entry was removed or replaced meanwhile
+    private void replaceIfSame(K key, Node<K, V> expected, V value) {
+        int weight = weigh(key, value);
+        evictionLock.lock();
+        try {
+            if (data.get(key) == expected && expected.queue != Queue.DEAD) {
+                update(expected, value, weight);
+                if (timerWheel != null) {
+                    expected.expirationTime = expirationTime(expected);
+                    timerWheel.reschedule(expected);
+                }
+                evict();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void update(Node<K, V> node, V value, int weight) {
+        int delta = weight - node.weight;
+        node.value = value;
+        node.weight = weight;
+        node.writeTime = ticker.read();
+        node.accessTime = node.writeTime;
+        weightedSize += delta;
+        if (node.queue == Queue.WINDOW) {
+            windowWeightedSize += delta;
+        } else if (node.queue == Queue.PROTECTED) {
+            protectedWeightedSize += delta;
+        }
+    }
+
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        int weight = weigh(key, value);
+        evictionLock.lock();
+        try {
+            maintenance();
+            V existing = putLocked(key, value, weight, onlyIfAbsent);
+            evict();
+            return existing;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Inserts a loaded batch under one lock acquisition, keeping values that are
+    // already present; returns the value now mapped for each key
+    private Map<K, V> putAllIfAbsent(Map<? extends K, ? extends V> entries) {
+        Map<K, V> installed = new HashMap<>();
+        evictionLock.lock();
+        try {
+            maintenance();
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                K key = entry.getKey();
+                V value = entry.getValue();
+                if (key == null || value == null) {
+                    continue;
+                }
+                V existing = putLocked(key, value, weigh(key, value), true);
+                installed.put(key, (existing != null) ? existing : value);
+            }
+            evict();
+            return installed;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Guarded by evictionLock; the caller runs evict() afterwards
+    private V putLocked(K key, V value, int weight, boolean onlyIfAbsent) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            // An expired entry that has not been cleaned up yet counts as absent
+            if (onlyIfAbsent && !(expires() && hasExpired(node, ticker.read()))) {
+                onAccess(node);
+                return node.value;
+            }
+            update(node, value, weight);
+            onAccess(node);
+            if (timerWheel != null) {
+                node.expirationTime = expirationTime(node);
+                timerWheel.reschedule(node);
+            }
+        } else {
+            node = new Node<>(key, value, weight);
+            node.writeTime = ticker.read();
+            node.accessTime = node.writeTime;
+            data.put(key, node);
+            sketch.increment(key);
+            window.addLast(node);
+            weightedSize += weight;
+            windowWeightedSize += weight;
+            if (timerWheel != null) {
+                node.expirationTime = expirationTime(node);
+                timerWheel.schedule(node);
+            }
+        }
+        return null;
+    }
+
+    private void afterRead(Node<K, V> node) {
+        if (readBuffer.offer(node) == ReadBuffer.Status.FULL && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // Guarded by evictionLock
+    private void maintenance() {
+        drainReadBuffer();
+        if (timerWheel != null) {
+            timerWheel.advance(ticker.read(), this::expireEntry);
+        }
+    }
+
+    private boolean expireEntry(Node<K, V> node) {
+        long now = ticker.read();
+        if (!hasExpired(node, now)) {
+            node.expirationTime = expirationTime(node);
+            return false;
+        }
+        data.remove(node.key, node);
+        unlink(node);
+        stats.recordEviction(RemovalCause.EXPIRED, node.weight);
+        return true;
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drainTo(this::onAccess);
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.queue != Queue.DEAD) {
+            sketch.increment(node.key);
+        }
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = Queue.PROTECTED;
+                protectedQueue.addLast(node);
+                protectedWeightedSize += node.weight;
+                demoteFromProtected();
+                break;
+            case PROTECTED:
+                protectedQueue.moveToLast(node);
+                break;
+            case DEAD:
+                // Removed after the read was buffered
+                return;
+        }
+        if ((timerWheel != null) && (expireAfterAccessNanos > 0)) {
+            node.expirationTime = expirationTime(node);
+            timerWheel.reschedule(node);
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeightedSize > protectedMaximum) {
+            Node<K, V> demoted = protectedQueue.pollFirst();
+            if (demoted == null) {
+                break;
+            }
+            protectedWeightedSize -= demoted.weight;
+            demoted.queue = Queue.PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private void evict() {
+        // Overflowing window entries move to the tail of probation as candidates
+        Node<K, V> firstCandidate = null;
+        while (windowWeightedSize > windowMaximum) {
+            Node<K, V> node = window.pollFirst();
+            windowWeightedSize -= node.weight;
+            node.queue = Queue.PROBATION;
+            probation.addLast(node);
+            if (firstCandidate == null) {
+                firstCandidate = node;
+            }
+        }
+
+        // Candidates are evaluated in arrival order against victims taken from the
+        // head of probation, falling back to protected and then the window
+        Node<K, V> candidate = firstCandidate;
+        while (weightedSize > maximum) {
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null || victim == candidate) {
+                victim = (victim == null) ? protectedQueue.peekFirst() : victim;
+                if (victim == null) {
+                    victim = window.peekFirst();
+                }
+                candidate = null;
+                evictEntry(victim);
+                continue;
+            }
+            if (candidate == null) {
+                evictEntry(victim);
+                continue;
+            }
+            Node<K, V> next = candidate.next;
+            if (admit(candidate.key, victim.key)) {
+                evictEntry(victim);
+            } else {
+                evictEntry(candidate);
+            }
+            candidate = next;
+        }
+    }
+
+    private int weigh(K key, V value) {
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        }
+        return weight;
+    }
+
+    private boolean admit(K candidateKey, K victimKey) {
+        return sketch.frequency(candidateKey) > sketch.frequency(victimKey);
+    }
+
+    private void evictEntry(Node<K, V> node) {
+        data.remove(node.key, node);
+        unlink(node);
+        stats.recordEviction(RemovalCause.SIZE, node.weight);
+    }
+
+    private void unlink(Node<K, V> node) {
+        weightedSize -= node.weight;
+        if (timerWheel != null) {
+            timerWheel.deschedule(node);
+        }
+        Queue queue = node.queue;
+        node.queue = Queue.DEAD;
+        switch (queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeightedSize -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedQueue.remove(node);
+                protectedWeightedSize -= node.weight;
+                break;
+            case DEAD:
+                break;
+        }
+    }
+
+    static final class Builder<K, V> {
+        private Weigher<? super K, ? super V> weigher;
+        private long maximum = -1;
+        private boolean weighted;
+        private long refreshAfterWriteNanos;
+        private long expireAfterWriteNanos;
+        private long expireAfterAccessNanos;
+        private Executor executor = ForkJoinPool.commonPool();
+        private Ticker ticker = Ticker.system();
+
+        private Builder() {
+        }
+
+        public Builder<K, V> maximumSize(long maximumSize) {
+            checkMaximum(maximumSize);
+            this.maximum = maximumSize;
+            this.weighted = false;
+            return this;
+        }
+
+        // Budget in the weigher's unit, e.g. bytes for ExpensiveObject.WEIGHER
+        public Builder<K, V> maximumWeight(long maximumWeight) {
+            checkMaximum(maximumWeight);
+            this.maximum = maximumWeight;
+            this.weighted = true;
+            return this;
+        }
+
+        public Builder<K, V> weigher(Weigher<? super K, ? super V> weigher) {
+            this.weigher = Objects.requireNonNull(weigher);
+            return this;
+        }
+
+        // Hits on entries older than this trigger a background reload with the caller's loader
+        public Builder<K, V> refreshAfterWrite(Duration duration) {
+            this.refreshAfterWriteNanos = checkPositive(duration, "refreshAfterWrite");
+            return this;
+        }
+
+        public Builder<K, V> expireAfterWrite(Duration duration) {
+            this.expireAfterWriteNanos = checkPositive(duration, "expireAfterWrite");
+            return this;
+        }
+
+        // Entries expire once neither read nor written for this long
+        public Builder<K, V> expireAfterAccess(Duration duration) {
+            this.expireAfterAccessNanos = checkPositive(duration, "expireAfterAccess");
+            return this;
+        }
+
+        // Runs asynchronous loads and refreshes; defaults to the common ForkJoinPool
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        public Builder<K, V> ticker(Ticker ticker) {
+            this.ticker = Objects.requireNonNull(ticker);
+            return this;
+        }
+
+        public BoundedCache<K, V> build() {
+            if (maximum < 0) {
+                throw new IllegalStateException("maximumSize or maximumWeight must be set");
+            }
+            if (weighted != (weigher != null)) {
+                throw new IllegalStateException("maximumWeight requires a weigher and vice versa");
+            }
+            if (weigher == null) {
+                weigher = Weigher.singleton();
+            }
+            return new BoundedCache<>(this);
+        }
+
+        // The sketch is sized by entry count, which a weighted bound can only guess at
+        private long expectedSize() {
+            return weighted ? Math.min(maximum, 1L << 20) : maximum;
+        }
+
+        private static long checkPositive(Duration duration, String name) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException(name + " must be positive: " + duration);
+            }
+            return duration.toNanos();
+        }
+
+        private static void checkMaximum(long maximum) {
+            if (maximum <= 0) {
+                throw new IllegalArgumentException("maximum must be positive: " + maximum);
+            }
+        }
+    }
+
+    enum Queue { WINDOW, PROBATION, PROTECTED, DEAD }
+
+    static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+        volatile long accessTime;
+        int weight;
+        Queue queue = Queue.WINDOW;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        // Guarded by evictionLock; only used when the cache expires entries
+        long expirationTime;
+        Node<K, V> prevInTimerOrder;
+        Node<K, V> nextInTimerOrder;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // Intrusive doubly-linked list ordered from least to most recently used
+    static final class AccessOrderDeque<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+        }
+    }
+}
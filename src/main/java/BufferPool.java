@@ -0,0 +1,378 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Recycles byte[] buffers in power-of-two size classes from 1KB to 4MB, so churn of
+// large short-lived buffers stops showing up as allocation rate. Follows the magazine
+// design of the Solaris slab allocator: each thread keeps two magazines (small stacks
+// of free buffers) per size class and serves acquire/release from them without any
+// synchronization; only when both are empty or both full does it trade a whole
+// magazine with the size class's global depot, under that depot's lock: an empty one
+// for a full one, or a full one for an empty one. A depot that is already full drops
+// the magazine and leaves its buffers to the GC.
+//
+// What a thread keeps in its magazines is capped (two magazines' worth of bytes by
+// default); past the cap the thread hands its largest classes back to the depot.
+// Threads that stop using the pool, e.g. pooled workers between tasks, can return
+// everything they hold with releaseThreadCache().
+//
+// Every acquired buffer is tracked through Lifecycle; if one becomes unreachable without
+// release() a leak warning is printed and counted. Requests above the largest class
+// are allocated directly and are not recycled. Thread-safe.
+final class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 10; // 1KB
+    private static final int MAX_CLASS_SHIFT = 22; // 4MB
+    private static final int DEFAULT_MAGAZINE_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_DEPOT_MAGAZINES = 8;
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_MAGAZINE_BYTES, DEFAULT_DEPOT_MAGAZINES);
+
+    private final SizeClass[] classes = new SizeClass[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    private final ThreadLocal<ThreadCache> magazines;
+    private final long maxThreadBytes;
+
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder magazineHits = new LongAdder();
+    private final LongAdder depotHits = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder trimmed = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    // magazineBytes bounds the buffers one magazine holds (at least one buffer)
+    BufferPool(int magazineBytes, int depotMagazines) {
+        this(magazineBytes, depotMagazines, 2L * magazineBytes);
+    }
+
+    // maxThreadBytes bounds the bytes one thread keeps in its magazines
+    BufferPool(int magazineBytes, int depotMagazines, long maxThreadBytes) {
+        for (int i = 0; i < classes.length; i++) {
+            int bufferSize = 1 << (MIN_CLASS_SHIFT + i);
+            classes[i] = new SizeClass(bufferSize, Math.max(1, magazineBytes / bufferSize), depotMagazines);
+        }
+        this.maxThreadBytes = maxThreadBytes;
+        this.magazines = ThreadLocal.withInitial(() -> new ThreadCache(classes));
+    }
+
+    static BufferPool shared() {
+        return SHARED;
+    }
+
+    // Returns a zero-filled buffer of at least size bytes; release() it when done
+    public PooledBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        acquires.increment();
+        int index = classIndex(size);
+        byte[] array = (index < 0) ? null : take(index);
+        if (array == null) {
+            allocations.increment();
+            array = new byte[(index < 0) ? size : classes[index].bufferSize];
+        } else {
+            Arrays.fill(array, 0, size, (byte) 0);
+        }
+        return new PooledBuffer(this, array, size, index);
+    }
+
+    public long acquireCount() {
+        return acquires.sum();
+    }
+
+    // Acquires served from the calling thread's magazines
+    public long magazineHitCount() {
+        return magazineHits.sum();
+    }
+
+    // Acquires that refilled from the global depot
+    public long depotHitCount() {
+        return depotHits.sum();
+    }
+
+    // Acquires that had to allocate a new array
+    public long allocationCount() {
+        return allocations.sum();
+    }
+
+    public long releaseCount() {
+        return releases.sum();
+    }
+
+    // Released buffers left to the GC because the depot was full
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    // Buffers handed back from thread caches over their cap or by releaseThreadCache
+    public long trimmedCount() {
+        return trimmed.sum();
+    }
+
+    // Returns the calling thread's cached buffers to the depot (or the GC, once the
+    // depot is full) and forgets its magazines; call when a thread is done with the pool
+    public void releaseThreadCache() {
+        ThreadCache local = magazines.get();
+        for (int index = classes.length - 1; index >= 0; index--) {
+            flush(local, index);
+        }
+        magazines.remove();
+    }
+
+    // Buffers garbage collected without being released
+    public long leakCount() {
+        return leaks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool{acquires=%d, magazineHits=%d, depotHits=%d, allocations=%d, "
+                        + "releases=%d, dropped=%d, trimmed=%d, leaks=%d}", acquireCount(), magazineHitCount(),
+                depotHitCount(), allocationCount(), releaseCount(), droppedCount(), trimmedCount(), leakCount());
+    }
+
+    private byte[] take(int index) {
+        ThreadCache cache = magazines.get();
+        Magazine[] local = cache.magazines[index];
+        SizeClass sizeClass = classes[index];
+        if (local[0].isEmpty()) {
+            if (!local[1].isEmpty()) {
+                swap(local);
+            } else {
+                Magazine full = sizeClass.takeFull();
+                if (full == null) {
+                    return null;
+                }
+                depotHits.increment();
+                sizeClass.putEmpty(local[0]);
+                local[0] = full;
+                cache.heldBytes += (long) (full.count - 1) * sizeClass.bufferSize;
+                return full.pop();
+            }
+        }
+        magazineHits.increment();
+        cache.heldBytes -= sizeClass.bufferSize;
+        return local[0].pop();
+    }
+
+    private void give(int index, byte[] array) {
+        releases.increment();
+        if (index < 0) {
+            return;
+        }
+        ThreadCache cache = magazines.get();
+        Magazine[] local = cache.magazines[index];
+        SizeClass sizeClass = classes[index];
+        if (local[0].isFull()) {
+            if (!local[1].isFull()) {
+                swap(local);
+            } else {
+                cache.heldBytes -= (long) local[1].count * sizeClass.bufferSize;
+                if (!sizeClass.putFull(local[1])) {
+                    dropped.add(local[1].count);
+                }
+                local[1] = local[0];
+                local[0] = sizeClass.takeEmpty();
+            }
+        }
+        local[0].push(array);
+        cache.heldBytes += sizeClass.bufferSize;
+        if (cache.heldBytes > maxThreadBytes) {
+            // Hand back the largest classes first: they hold the most bytes per buffer
+            for (int i = classes.length - 1; i >= 0 && cache.heldBytes > maxThreadBytes / 2; i--) {
+                flush(cache, i);
+            }
+        }
+    }
+
+    // Moves both of a thread's magazines for one class out: full ones to the depot,
+    // partial ones to the GC
+    private void flush(ThreadCache cache, int index) {
+        Magazine[] local = cache.magazines[index];
+        SizeClass sizeClass = classes[index];
+        for (int i = 0; i < local.length; i++) {
+            Magazine magazine = local[i];
+            if (magazine.isEmpty()) {
+                continue;
+            }
+            trimmed.add(magazine.count);
+            cache.heldBytes -= (long) magazine.count * sizeClass.bufferSize;
+            if (magazine.isFull() && sizeClass.putFull(magazine)) {
+                local[i] = sizeClass.takeEmpty();
+            } else {
+                dropped.add(magazine.count);
+                magazine.clear();
+            }
+        }
+    }
+
+    private static void swap(Magazine[] local) {
+        Magazine loaded = local[0];
+        local[0] = local[1];
+        local[1] = loaded;
+    }
+
+    // Index of the smallest class holding size bytes, or -1 if it is larger than all
+    private static int classIndex(int size) {
+        if (size > (1 << MAX_CLASS_SHIFT)) {
+            return -1;
+        }
+        int shift = (size <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    // A buffer on loan from the pool. array() may be longer than length().
+    static final class PooledBuffer {
+        private final BufferPool pool;
+        private final int length;
+        private final int classIndex;
+        private final LeakReport report;
+        private final Lifecycle.Registration registration;
+        private volatile byte[] array;
+
+        private PooledBuffer(BufferPool pool, byte[] array, int length, int classIndex) {
+            this.pool = pool;
+            this.array = array;
+            this.length = length;
+            this.classIndex = classIndex;
+            this.report = new LeakReport(pool, array.length, Thread.currentThread().getName());
+            this.registration = Lifecycle.register(this, report);
+        }
+
+        public byte[] array() {
+            byte[] current = array;
+            if (current == null) {
+                throw new IllegalStateException("Buffer has been released");
+            }
+            return current;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public int capacity() {
+            return report.capacity;
+        }
+
+        // Returns the array to the pool; it must not be used afterwards. Idempotent.
+        public synchronized void release() {
+            byte[] released = array;
+            if (released == null) {
+                return;
+            }
+            array = null;
+            report.released = true;
+            registration.close();
+            pool.give(classIndex, released);
+        }
+    }
+
+    // Must not refer to the PooledBuffer, or it would never become unreachable
+    private static final class LeakReport implements Runnable {
+        final BufferPool pool;
+        final int capacity;
+        final String thread;
+        volatile boolean released;
+
+        LeakReport(BufferPool pool, int capacity, String thread) {
+            this.pool = pool;
+            this.capacity = capacity;
+            this.thread = thread;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                pool.leaks.increment();
+                System.err.println("LEAK: " + capacity + "-byte pooled buffer acquired by thread "
+                        + thread + " was garbage collected without release()");
+            }
+        }
+    }
+
+    private static final class Magazine {
+        final byte[][] rounds;
+        int count;
+
+        Magazine(int capacity) {
+            this.rounds = new byte[capacity][];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        boolean isFull() {
+            return count == rounds.length;
+        }
+
+        void clear() {
+            Arrays.fill(rounds, 0, count, null);
+            count = 0;
+        }
+
+        byte[] pop() {
+            byte[] array = rounds[--count];
+            rounds[count] = null;
+            return array;
+        }
+
+        void push(byte[] array) {
+            rounds[count++] = array;
+        }
+    }
+
+    // One thread's {loaded, previous} magazine for every size class
+    private static final class ThreadCache {
+        final Magazine[][] magazines;
+        // Bytes of the buffers in this thread's magazines
+        long heldBytes;
+
+        ThreadCache(SizeClass[] classes) {
+            magazines = new Magazine[classes.length][];
+            for (int i = 0; i < classes.length; i++) {
+                magazines[i] = new Magazine[] {
+                        new Magazine(classes[i].rounds), new Magazine(classes[i].rounds)};
+            }
+        }
+    }
+
+    // Full and empty magazines shared by all threads for one buffer size
+    private static final class SizeClass {
+        final int bufferSize;
+        final int rounds;
+        final int depotCapacity;
+        private final ArrayDeque<Magazine> full = new ArrayDeque<>();
+        private final ArrayDeque<Magazine> empty = new ArrayDeque<>();
+
+        SizeClass(int bufferSize, int rounds, int depotCapacity) {
+            this.bufferSize = bufferSize;
+            this.rounds = rounds;
+            this.depotCapacity = depotCapacity;
+        }
+
+        synchronized Magazine takeFull() {
+            return full.pollFirst();
+        }
+
+        synchronized boolean putFull(Magazine magazine) {
+            if (full.size() >= depotCapacity) {
+                return false;
+            }
+            full.addFirst(magazine);
+            return true;
+        }
+
+        // An empty magazine from the depot, or a new one
+        synchronized Magazine takeEmpty() {
+            Magazine magazine = empty.pollFirst();
+            return (magazine != null) ? magazine : new Magazine(rounds);
+        }
+
+        synchronized void putEmpty(Magazine magazine) {
+            if (empty.size() < depotCapacity) {
+                empty.addFirst(magazine);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Binary snapshot of String -> ExpensiveObject cache entries for warm restarts.
+//
+// Layout (big-endian):
+//   header  magic:int  version:int
+//   entry*  keyLength:int  key:UTF-8  id:int  payloadLength:int  payload:bytes
+//   trailer END_MARKER:int  entryCount:long  crc32c:long
+//
+// The checksum covers every entry byte. Writes are sequential through one direct
+// buffer into a temporary file that is atomically moved into place, so a crash
+// mid-write never leaves a truncated snapshot behind. Reads memory-map the file in
+// windows of up to 1GB (a single mapping is limited to 2GB) and make two passes: the
+// first checks structure and checksum without creating any objects, the second
+// streams entries straight to the caller, so a corrupt file loads nothing and a
+// valid one is never held on the heap as a whole.
+final class CacheSnapshot {
+    private static final int MAGIC = 0x454C4353; // "ELCS"
+    private static final int VERSION = 1;
+    private static final int END_MARKER = -1;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 4 + 8 + 8;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    private CacheSnapshot() {
+    }
+
+    // Returns the number of entries written
+    public static long write(Path file, Consumer<BiConsumer<String, MemoryLeakExamples.ExpensiveObject>> entries)
+            throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            long count;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer writer = new Writer(channel);
+                writer.buffer.putInt(MAGIC).putInt(VERSION);
+                IOException[] failure = new IOException[1];
+                entries.accept((key, value) -> {
+                    if (failure[0] == null) {
+                        try {
+                            writer.writeEntry(key, value);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                writer.finish();
+                channel.force(true);
+                count = writer.count;
+            }
+            // Closed first: some platforms refuse to move a file that is still open
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Verifies the whole snapshot, then passes each entry to sink as it is read
+    public static long read(Path file, BiConsumer<String, MemoryLeakExamples.ExpensiveObject> sink)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Snapshot too short: " + file);
+            }
+            long count = scan(file, channel, size, null);
+            scan(file, channel, size, sink);
+            return count;
+        }
+    }
+
+    // One pass over the entries. Without a sink only the structure, entry count and
+    // checksum are checked and nothing is allocated per entry.
+    private static long scan(Path file, FileChannel channel, long size,
+            BiConsumer<String, MemoryLeakExamples.ExpensiveObject> sink) throws IOException {
+        boolean verifying = (sink == null);
+        MappedReader reader = new MappedReader(channel, size, verifying);
+        if (reader.getInt(false) != MAGIC || reader.getInt(false) != VERSION) {
+            throw new IOException("Not a cache snapshot (bad magic or version): " + file);
+        }
+        long count = 0;
+        int keyLength;
+        while ((keyLength = reader.getInt(true)) != END_MARKER) {
+            if (keyLength < 0 || keyLength > size) {
+                throw new IOException("Corrupt snapshot entry at offset " + reader.position());
+            }
+            ByteBuffer key = reader.slice(keyLength);
+            int id = reader.getInt(true);
+            int payloadLength = reader.getInt(true);
+            if (payloadLength < 0 || payloadLength > size) {
+                throw new IOException("Corrupt snapshot entry at offset " + reader.position());
+            }
+            ByteBuffer payload = reader.slice(payloadLength);
+            if (!verifying) {
+                sink.accept(StandardCharsets.UTF_8.decode(key).toString(),
+                        new MemoryLeakExamples.ExpensiveObject(id, payload));
+            }
+            count++;
+        }
+        if (verifying) {
+            long expectedCount = reader.getLong();
+            long checksum = reader.getLong();
+            if (count != expectedCount || checksum != reader.crc.getValue()) {
+                throw new IOException("Snapshot checksum mismatch, refusing to load: " + file);
+            }
+        }
+        return count;
+    }
+
+    private static final class Writer {
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        final CRC32C crc = new CRC32C();
+        long count;
+        // Bytes at the start of buffer that belong to the header and are not checksummed
+        int uncheckedPrefix = HEADER_SIZE;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeEntry(String key, MemoryLeakExamples.ExpensiveObject value) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            ensure(12 + keyBytes.length);
+            buffer.putInt(keyBytes.length).put(keyBytes).putInt(value.getId()).putInt(value.getPayloadSize());
+            for (ByteBuffer segment : value.payloadSegments()) {
+                if (segment.remaining() <= buffer.remaining()) {
+                    buffer.put(segment);
+                } else {
+                    // Large segments bypass the buffer and go straight to the channel
+                    flush();
+                    crc.update(segment.duplicate());
+                    while (segment.hasRemaining()) {
+                        channel.write(segment);
+                    }
+                }
+            }
+            count++;
+        }
+
+        void finish() throws IOException {
+            ensure(4);
+            buffer.putInt(END_MARKER);
+            flush();
+            buffer.putLong(count).putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.remaining() < bytes) {
+                    throw new IOException("Snapshot record of " + bytes + " bytes exceeds write buffer");
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            ByteBuffer checked = buffer.duplicate();
+            checked.position(uncheckedPrefix);
+            crc.update(checked);
+            uncheckedPrefix = 0;
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // Sequential reader over a sliding memory-mapped window of the file; checksums what
+    // it reads when verifying
+    private static final class MappedReader {
+        final FileChannel channel;
+        final long size;
+        final boolean verifying;
+        final CRC32C crc = new CRC32C();
+        MappedByteBuffer window;
+        long windowStart;
+
+        MappedReader(FileChannel channel, long size, boolean verifying) throws IOException {
+            this.channel = channel;
+            this.size = size;
+            this.verifying = verifying;
+            map(0, 0);
+        }
+
+        long position() {
+            return windowStart + window.position();
+        }
+
+        int getInt(boolean checked) throws IOException {
+            ensure(4);
+            if (checked && verifying) {
+                crc.update(window.duplicate().limit(window.position() + 4));
+            }
+            return window.getInt();
+        }
+
+        // The trailer is not covered by the checksum
+        long getLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        ByteBuffer slice(int length) throws IOException {
+            ensure(length);
+            ByteBuffer slice = window.slice(window.position(), length);
+            if (verifying) {
+                crc.update(slice.duplicate());
+            }
+            window.position(window.position() + length);
+            return slice;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = position();
+                if (position + bytes > size) {
+                    throw new IOException("Snapshot truncated at offset " + position);
+                }
+                map(position, bytes);
+            }
+        }
+
+        private void map(long position, int minimum) throws IOException {
+            long length = Math.min(size - position, Math.max(MAP_WINDOW_SIZE, minimum));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+        }
+    }
+}
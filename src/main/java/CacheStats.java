@@ -0,0 +1,123 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+// Immutable point-in-time view of a cache's statistics, produced by StatsCounter.
+final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long[] evictionCounts;
+    private final long evictionWeight;
+    private final long estimatedSize;
+    private final long weightedSize;
+    private final long[] loadLatencyHistogram;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+            long totalLoadTime, long[] evictionCounts, long evictionWeight,
+            long estimatedSize, long weightedSize, long[] loadLatencyHistogram) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCounts = evictionCounts.clone();
+        this.evictionWeight = evictionWeight;
+        this.estimatedSize = estimatedSize;
+        this.weightedSize = weightedSize;
+        this.loadLatencyHistogram = loadLatencyHistogram.clone();
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    public double hitRate() {
+        long requests = requestCount();
+        return (requests == 0) ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long loadCount() {
+        return loadSuccessCount + loadFailureCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    public double averageLoadPenalty() {
+        long loads = loadCount();
+        return (loads == 0) ? 0.0 : (double) totalLoadTime / loads;
+    }
+
+    // Upper bound, in nanoseconds, of the load latency at the given percentile (0.0 - 1.0)
+    public long loadLatencyPercentile(double percentile) {
+        return LatencyHistogram.percentile(loadLatencyHistogram, percentile);
+    }
+
+    // Bucket i counts loads that took [2^(i-1), 2^i) nanoseconds
+    public long[] loadLatencyHistogram() {
+        return loadLatencyHistogram.clone();
+    }
+
+    public long evictionCount() {
+        long total = 0;
+        for (long count : evictionCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long evictionCount(RemovalCause cause) {
+        return evictionCounts[cause.ordinal()];
+    }
+
+    public long evictionWeight() {
+        return evictionWeight;
+    }
+
+    public long estimatedSize() {
+        return estimatedSize;
+    }
+
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount
+                + ", hitRate=" + String.format("%.3f", hitRate())
+                + ", loadSuccessCount=" + loadSuccessCount + ", loadFailureCount=" + loadFailureCount
+                + ", averageLoadPenalty=" + String.format("%.0f", averageLoadPenalty())
+                + "ns, p99LoadLatency=" + loadLatencyPercentile(0.99)
+                + "ns, evictions=" + evictionsByCause()
+                + ", evictionWeight=" + evictionWeight + ", size=" + estimatedSize
+                + ", weightedSize=" + weightedSize + "}";
+    }
+
+    private String evictionsByCause() {
+        Map<RemovalCause, Long> byCause = new EnumMap<>(RemovalCause.class);
+        for (RemovalCause cause : RemovalCause.values()) {
+            byCause.put(cause, evictionCounts[cause.ordinal()]);
+        }
+        return byCause.toString();
+    }
+}
@@ -0,0 +1,149 @@
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Publishes cache statistics on the platform MBean server under
+// "MemoryLeakExamples:type=CacheStats,name=<name>". Every attribute read takes a fresh
+// snapshot. The MBean server keeps registered beans forever, so a bean holds its cache
+// only weakly: once the cache has been collected, the next read unregisters the bean
+// and fails. Call unregister() to remove it sooner.
+final class CacheStatsMBeans {
+
+    private CacheStatsMBeans() {
+    }
+
+    // stats is applied to the cache on every read; it must not capture the cache itself,
+    // e.g. pass NaiveCacheExample::getStats rather than cache::getStats
+    public static <T> ObjectName register(String name, T cache, Function<? super T, CacheStats> stats) {
+        try {
+            ObjectName objectName = objectName(name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new Adapter<>(objectName, cache, stats), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register cache stats MBean " + name, e);
+        }
+    }
+
+    public static void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister cache stats MBean " + name, e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("MemoryLeakExamples:type=CacheStats,name=" + ObjectName.quote(name));
+    }
+
+    static final class Adapter<T> implements CacheStatsMXBean {
+        private final ObjectName objectName;
+        private final WeakReference<T> cache;
+        private final Function<? super T, CacheStats> stats;
+
+        Adapter(ObjectName objectName, T cache, Function<? super T, CacheStats> stats) {
+            this.objectName = objectName;
+            this.cache = new WeakReference<>(cache);
+            this.stats = stats;
+        }
+
+        private CacheStats stats() {
+            T target = cache.get();
+            if (target == null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                } catch (JMException e) {
+                    // already unregistered or replaced
+                }
+                throw new IllegalStateException("Cache behind " + objectName + " has been collected");
+            }
+            return stats.apply(target);
+        }
+
+        @Override
+        public long getHitCount() {
+            return stats().hitCount();
+        }
+
+        @Override
+        public long getMissCount() {
+            return stats().missCount();
+        }
+
+        @Override
+        public double getHitRate() {
+            return stats().hitRate();
+        }
+
+        @Override
+        public long getLoadCount() {
+            return stats().loadCount();
+        }
+
+        @Override
+        public long getLoadFailureCount() {
+            return stats().loadFailureCount();
+        }
+
+        @Override
+        public double getAverageLoadPenaltyNanos() {
+            return stats().averageLoadPenalty();
+        }
+
+        @Override
+        public long getLoadLatencyP50Nanos() {
+            return stats().loadLatencyPercentile(0.50);
+        }
+
+        @Override
+        public long getLoadLatencyP99Nanos() {
+            return stats().loadLatencyPercentile(0.99);
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return stats().evictionCount();
+        }
+
+        @Override
+        public long getSizeEvictionCount() {
+            return stats().evictionCount(RemovalCause.SIZE);
+        }
+
+        @Override
+        public long getExpiredEvictionCount() {
+            return stats().evictionCount(RemovalCause.EXPIRED);
+        }
+
+        @Override
+        public long getCollectedEvictionCount() {
+            return stats().evictionCount(RemovalCause.COLLECTED);
+        }
+
+        @Override
+        public long getEvictionWeight() {
+            return stats().evictionWeight();
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return stats().estimatedSize();
+        }
+
+        @Override
+        public long getWeightedSize() {
+            return stats().weightedSize();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+// JMX view of a cache's statistics; see CacheStatsMBeans for registration.
+public interface CacheStatsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadPenaltyNanos();
+
+    long getLoadLatencyP50Nanos();
+
+    long getLoadLatencyP99Nanos();
+
+    long getEvictionCount();
+
+    long getSizeEvictionCount();
+
+    long getExpiredEvictionCount();
+
+    long getCollectedEvictionCount();
+
+    long getEvictionWeight();
+
+    long getEstimatedSize();
+
+    long getWeightedSize();
+}
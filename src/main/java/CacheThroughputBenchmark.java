@@ -0,0 +1,75 @@
+import java.util.Random;
+import java.util.function.Function;
+
+// Multi-threaded read throughput of BoundedCache against the same cache behind a
+// single synchronized wrapper, i.e. what callers had to do with the HashMap-backed
+// NaiveCacheExample. Keys follow a skewed distribution so most reads are hits.
+//
+// Run: java -Xmx1g CacheThroughputBenchmark [secondsPerRun]
+public class CacheThroughputBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int MAXIMUM_SIZE = 1 << 14;
+    private static final int KEY_SPACE = 1 << 16;
+    private static final int KEYS_PER_THREAD = 1 << 12;
+
+    interface Cache {
+        Integer get(String key, Function<String, Integer> loader);
+    }
+
+    static final class SynchronizedCache implements Cache {
+        private final BoundedCache<String, Integer> delegate;
+
+        SynchronizedCache(BoundedCache<String, Integer> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized Integer get(String key, Function<String, Integer> loader) {
+            return delegate.get(key, loader);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = (args.length > 0) ? Long.parseLong(args[0]) : 2;
+        String[] keys = new String[KEY_SPACE];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key_" + i;
+        }
+
+        System.out.printf("%8s %20s %20s%n", "threads", "concurrent ops/s", "synchronized ops/s");
+        for (int threads : THREAD_COUNTS) {
+            BoundedCache<String, Integer> concurrent = newCache();
+            Cache synchronizedCache = new SynchronizedCache(newCache());
+            double concurrentOps = run(concurrent::get, keys, threads, seconds);
+            double synchronizedOps = run(synchronizedCache, keys, threads, seconds);
+            System.out.printf("%8d %20.0f %20.0f%n", threads, concurrentOps, synchronizedOps);
+        }
+    }
+
+    private static BoundedCache<String, Integer> newCache() {
+        return BoundedCache.<String, Integer>newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    }
+
+    private static double run(Cache cache, String[] keys, int threads, long seconds)
+            throws InterruptedException {
+        Function<String, Integer> loader = String::length;
+        for (String key : keys) {
+            cache.get(key, loader);
+        }
+
+        return ThroughputHarness.run(threads, seconds, t -> {
+            String[] workload = skewedKeys(keys, t);
+            return count -> cache.get(workload[(int) count & (KEYS_PER_THREAD - 1)], loader);
+        }, () -> { });
+    }
+
+    // Each thread replays its own precomputed sequence so key generation stays off the clock
+    private static String[] skewedKeys(String[] keys, int seed) {
+        Random random = new Random(seed);
+        String[] workload = new String[KEYS_PER_THREAD];
+        for (int i = 0; i < workload.length; i++) {
+            workload[i] = keys[(int) (Math.pow(random.nextDouble(), 4) * keys.length)];
+        }
+        return workload;
+    }
+}
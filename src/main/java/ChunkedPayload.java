@@ -0,0 +1,110 @@
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+// Heap payload split into 64KB pages behind one logical index space. G1 allocates any
+// object of half a region or more as humongous, directly in old-gen regions of its
+// own; a 1MB byte[] is humongous with the 1-2MB regions of heaps up to 4GB. 64KB
+// pages stay below the threshold for every region size, so they are allocated in
+// eden, copied and aged like other young objects, and never strand the unused tail
+// of a humongous region.
+//
+// readOnlySegments() and the bulk get/put methods work page by page without copying,
+// and are what callers should use. readOnlyView() wraps a single page directly; a
+// payload of several pages is copied into a new heap array, which is exactly the
+// humongous allocation the pages avoid.
+final class ChunkedPayload implements Payload {
+    static final int PAGE_SHIFT = 16;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT; // 64KB
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // Object header + size + pages reference, with compressed oops
+    private static final int SHALLOW_SIZE = 24;
+    private static final int REFERENCE_SIZE = 4;
+
+    private final byte[][] pages;
+    private final int size;
+
+    ChunkedPayload(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        this.size = size;
+        this.pages = new byte[(int) ((size + (long) PAGE_MASK) >>> PAGE_SHIFT)][];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = new byte[Math.min(PAGE_SIZE, size - (i << PAGE_SHIFT))];
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        Objects.checkIndex(index, size);
+        return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+    }
+
+    @Override
+    public void put(int index, byte value) {
+        Objects.checkIndex(index, size);
+        pages[index >>> PAGE_SHIFT][index & PAGE_MASK] = value;
+    }
+
+    @Override
+    public void get(int offset, byte[] dst, int dstOffset, int length) {
+        Objects.checkFromIndexSize(offset, length, size);
+        Objects.checkFromIndexSize(dstOffset, length, dst.length);
+        while (length > 0) {
+            int inPage = offset & PAGE_MASK;
+            int n = Math.min(length, PAGE_SIZE - inPage);
+            System.arraycopy(pages[offset >>> PAGE_SHIFT], inPage, dst, dstOffset, n);
+            offset += n;
+            dstOffset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void put(int offset, byte[] src, int srcOffset, int length) {
+        Objects.checkFromIndexSize(offset, length, size);
+        Objects.checkFromIndexSize(srcOffset, length, src.length);
+        while (length > 0) {
+            int inPage = offset & PAGE_MASK;
+            int n = Math.min(length, PAGE_SIZE - inPage);
+            System.arraycopy(src, srcOffset, pages[offset >>> PAGE_SHIFT], inPage, n);
+            offset += n;
+            srcOffset += n;
+            length -= n;
+        }
+    }
+
+    // A copy owned by the caller unless there is only one page; prefer readOnlySegments()
+    @Override
+    public ByteBuffer readOnlyView() {
+        if (pages.length == 1) {
+            return ByteBuffer.wrap(pages[0]).asReadOnlyBuffer();
+        }
+        byte[] copy = new byte[size];
+        get(0, copy, 0, size);
+        return ByteBuffer.wrap(copy).asReadOnlyBuffer();
+    }
+
+    @Override
+    public ByteBuffer[] readOnlySegments() {
+        ByteBuffer[] segments = new ByteBuffer[pages.length];
+        for (int i = 0; i < pages.length; i++) {
+            segments[i] = ByteBuffer.wrap(pages[i]).asReadOnlyBuffer();
+        }
+        return segments;
+    }
+
+    @Override
+    public long footprint() {
+        long footprint = SHALLOW_SIZE + HeapPayload.arrayFootprint((long) pages.length * REFERENCE_SIZE);
+        for (byte[] page : pages) {
+            footprint += HeapPayload.arrayFootprint(page.length);
+        }
+        return footprint;
+    }
+}
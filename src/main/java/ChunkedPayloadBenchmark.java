@@ -0,0 +1,161 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+// Allocation churn of ExpensiveObjects with contiguous 1MB payloads against the same
+// payloads in 64KB pages, under G1. Each run keeps a sliding window of live objects
+// (a cache-like working set) while allocating many more, and writes every payload
+// once so the pages are touched. The objects are not registered with Lifecycle, so
+// no reclaim callbacks or their output run inside the timed loop.
+//
+// Humongous allocations are estimated from G1HeapRegionSize: every payload array of
+// at least half a region is one. Pauses come from GC notifications (young, mixed and
+// full collections; the concurrent cycle's own time is not a pause), along with how
+// many collections G1 started because of a humongous allocation.
+//
+// Run each layout in its own JVM for clean numbers:
+//   java -XX:+UseG1GC -Xmx2g ChunkedPayloadBenchmark [objects] [live] [payloadBytes] [contiguous|chunked|both]
+public class ChunkedPayloadBenchmark {
+    private static final String HUMONGOUS_CAUSE = "G1 Humongous Allocation";
+
+    public static void main(String[] args) throws InterruptedException {
+        int objects = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+        int live = (args.length > 1) ? Integer.parseInt(args[1]) : 256;
+        int payloadSize = (args.length > 2)
+                ? Integer.parseInt(args[2]) : MemoryLeakExamples.ExpensiveObject.DEFAULT_PAYLOAD_SIZE;
+        String layout = (args.length > 3) ? args[3] : "both";
+
+        long regionSize = g1RegionSize();
+        if (regionSize <= 0) {
+            System.out.println("Not running G1; humongous estimates are not meaningful");
+        }
+        System.out.printf("%d objects, %d live, %d-byte payloads, G1 region %dKB%n",
+                objects, live, payloadSize, regionSize / 1024);
+        System.out.printf("%-11s %10s %10s %8s %10s %10s %10s%n", "layout", "humongous",
+                "hum. GCs", "pauses", "total ms", "max ms", "time ms");
+        PauseRecorder recorder = new PauseRecorder();
+        if (!layout.equals("chunked")) {
+            run("contiguous", objects, live, payloadSize, isHumongous(payloadSize, regionSize) ? 1 : 0, recorder,
+                    id -> MemoryLeakExamples.ExpensiveObject.untracked(id, new HeapPayload(payloadSize)));
+        }
+        if (!layout.equals("contiguous")) {
+            int pages = (payloadSize + ChunkedPayload.PAGE_SIZE - 1) / ChunkedPayload.PAGE_SIZE;
+            run("chunked", objects, live, payloadSize,
+                    isHumongous(Math.min(payloadSize, ChunkedPayload.PAGE_SIZE), regionSize) ? pages : 0, recorder,
+                    id -> MemoryLeakExamples.ExpensiveObject.untracked(id, new ChunkedPayload(payloadSize)));
+        }
+    }
+
+    // humongousPerObject: payload arrays per object that are humongous allocations
+    private static void run(String label, int objects, int live, int payloadSize, int humongousPerObject,
+            PauseRecorder recorder, IntFunction<MemoryLeakExamples.ExpensiveObject> factory)
+            throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        recorder.reset();
+
+        byte[] block = new byte[4096];
+        MemoryLeakExamples.ExpensiveObject[] window = new MemoryLeakExamples.ExpensiveObject[live];
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < objects; i++) {
+            MemoryLeakExamples.ExpensiveObject object = factory.apply(i);
+            Payload payload = object.getPayload();
+            block[0] = (byte) i;
+            for (int offset = 0; offset < payloadSize; offset += block.length) {
+                payload.put(offset, block, 0, Math.min(block.length, payloadSize - offset));
+            }
+            // Read the oldest live object before it is replaced
+            MemoryLeakExamples.ExpensiveObject oldest = window[i % live];
+            if (oldest != null) {
+                checksum += oldest.getPayload().get(0);
+            }
+            window[i % live] = object;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        Thread.sleep(100); // let the last notifications arrive
+
+        System.out.printf("%-11s %10d %10d %8d %10d %10d %10.0f   (checksum %d)%n", label,
+                (long) humongousPerObject * objects, recorder.humongousCauses(), recorder.pauses(),
+                recorder.totalMillis(), recorder.maxMillis(), elapsedNanos / 1e6, checksum);
+    }
+
+    // A byte[] is humongous when it takes at least half a G1 region, header included
+    private static boolean isHumongous(int payloadSize, long regionSize) {
+        return regionSize > 0 && HeapPayload.arrayFootprint(payloadSize) >= regionSize / 2;
+    }
+
+    private static long g1RegionSize() {
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            boolean g1 = Boolean.parseBoolean(hotSpot.getVMOption("UseG1GC").getValue());
+            return g1 ? Long.parseLong(hotSpot.getVMOption("G1HeapRegionSize").getValue()) : 0;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    // Collects stop-the-world pauses reported through GC notifications
+    private static final class PauseRecorder {
+        private final List<Long> pauseMillis = new ArrayList<>();
+        private int humongousCauses;
+
+        PauseRecorder() {
+            NotificationListener listener = (notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    record(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+                }
+            };
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+        }
+
+        private synchronized void record(GarbageCollectionNotificationInfo info) {
+            if (info.getGcName().contains("Concurrent")) {
+                return;
+            }
+            if (info.getGcCause().equals(HUMONGOUS_CAUSE)) {
+                humongousCauses++;
+            }
+            pauseMillis.add(info.getGcInfo().getDuration());
+        }
+
+        synchronized void reset() {
+            pauseMillis.clear();
+            humongousCauses = 0;
+        }
+
+        synchronized int humongousCauses() {
+            return humongousCauses;
+        }
+
+        synchronized int pauses() {
+            return pauseMillis.size();
+        }
+
+        synchronized long totalMillis() {
+            long total = 0;
+            for (long millis : pauseMillis) {
+                total += millis;
+            }
+            return total;
+        }
+
+        synchronized long maxMillis() {
+            long max = 0;
+            for (long millis : pauseMillis) {
+                max = Math.max(max, millis);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+// Append-only struct-of-arrays registry for millions of small (id, payload) records.
+// A List<ExpensiveObject> pays per record for an object header, a payload object, an
+// array header and a reference in the list; here a record is one slot in each of
+// three primitive columns (int ids, long payload offsets, long payload lengths) and
+// its bytes in a shared off-heap region, so the heap holds no per-record objects at
+// all and the GC has nothing to trace.
+//
+// The region is a list of direct slabs (64MB by default); a payload never spans two
+// slabs, so it can be no larger than one. Records are looked up by id through an
+// open-addressing index (the latest record wins for duplicate ids), or iterated with
+// a Cursor; neither creates an ExpensiveObject. Payload bytes are read in place
+// (payloadByte, copyPayload) or copied out (payload); nothing hands out a view of a
+// slab, because clear() frees the slabs at once. Not thread-safe.
+final class ColumnarStore {
+    private static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int COPY_CHUNK = 64 * 1024;
+    private static final int NONE = -1;
+
+    private final int slabSize;
+    private final int slabShift;
+    private final List<OffHeapPayload> slabs = new ArrayList<>();
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private long[] lengths = new long[INITIAL_CAPACITY];
+    private int size;
+    // Next free byte in the region; slab index in the high bits
+    private long end;
+
+    // Index table: slot -> row + 1, 0 when empty
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private byte[] copyBuffer;
+
+    ColumnarStore() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    // slabSize is rounded up to a power of two
+    ColumnarStore(int slabSize) {
+        this.slabShift = 32 - Integer.numberOfLeadingZeros(Math.max(slabSize, 2) - 1);
+        if (slabShift > 30) {
+            throw new IllegalArgumentException("slabSize must be at most 1GB: " + slabSize);
+        }
+        this.slabSize = 1 << slabShift;
+    }
+
+    // Copies the object's id and payload into the store; returns the new row
+    public int add(MemoryLeakExamples.ExpensiveObject object) {
+        Payload payload = object.getPayload();
+        int row = append(object.getId(), payload.size());
+        if (copyBuffer == null) {
+            copyBuffer = new byte[COPY_CHUNK];
+        }
+        OffHeapPayload slab = slabOf(offsets[row]);
+        int base = offsetInSlab(offsets[row]);
+        for (int copied = 0; copied < payload.size(); copied += COPY_CHUNK) {
+            int n = Math.min(COPY_CHUNK, payload.size() - copied);
+            payload.get(copied, copyBuffer, 0, n);
+            slab.put(base + copied, copyBuffer, 0, n);
+        }
+        return row;
+    }
+
+    // Adds a record with a zero-filled payload, without copying anything
+    public int addZeroed(int id, int payloadSize) {
+        return append(id, payloadSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Row of the latest record with this id, or -1
+    public int rowOf(int id) {
+        int mask = table.length - 1;
+        for (int slot = home(id, mask); ; slot = (slot + 1) & mask) {
+            int stored = table[slot];
+            if (stored == 0) {
+                return NONE;
+            }
+            if (ids[stored - 1] == id) {
+                return stored - 1;
+            }
+        }
+    }
+
+    public int id(int row) {
+        return ids[checkRow(row)];
+    }
+
+    public long payloadLength(int row) {
+        return lengths[checkRow(row)];
+    }
+
+    public byte payloadByte(int row, int index) {
+        checkRow(row);
+        if (index < 0 || index >= lengths[row]) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + lengths[row]);
+        }
+        return slabOf(offsets[row]).get(offsetInSlab(offsets[row]) + index);
+    }
+
+    // Copy of a record's payload on the heap; it stays valid after clear()
+    public ByteBuffer payload(int row) {
+        byte[] copy = new byte[(int) payloadLength(row)];
+        copyPayload(row, copy, 0);
+        return ByteBuffer.wrap(copy).asReadOnlyBuffer();
+    }
+
+    // Copies a record's payload into dst at dstOffset, allocating nothing; returns its length
+    public int copyPayload(int row, byte[] dst, int dstOffset) {
+        int length = (int) lengths[checkRow(row)];
+        Objects.checkFromIndexSize(dstOffset, length, dst.length);
+        slabOf(offsets[row]).get(offsetInSlab(offsets[row]), dst, dstOffset, length);
+        return length;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Heap bytes of the columns and index, plus the off-heap slabs reserved
+    public long footprint() {
+        long heap = HeapPayload.arrayFootprint(4L * ids.length)
+                + 2 * HeapPayload.arrayFootprint(8L * offsets.length)
+                + HeapPayload.arrayFootprint(4L * table.length);
+        return heap + (long) slabs.size() * slabSize;
+    }
+
+    // Bytes of payload stored, excluding slab tails left unused
+    public long payloadBytes() {
+        long total = 0;
+        for (int row = 0; row < size; row++) {
+            total += lengths[row];
+        }
+        return total;
+    }
+
+    // Drops every record and frees the off-heap region now; rows read before stay
+    // valid only as copies
+    public void clear() {
+        for (OffHeapPayload slab : slabs) {
+            slab.release();
+        }
+        slabs.clear();
+        Arrays.fill(table, 0);
+        size = 0;
+        end = 0;
+    }
+
+    // Forward-only iteration over rows in insertion order, allocating nothing per row
+    final class Cursor {
+        private int row = NONE;
+
+        public boolean next() {
+            if (row + 1 >= size) {
+                return false;
+            }
+            row++;
+            return true;
+        }
+
+        public int row() {
+            return row;
+        }
+
+        public int id() {
+            return ColumnarStore.this.id(row);
+        }
+
+        public long payloadLength() {
+            return ColumnarStore.this.payloadLength(row);
+        }
+
+        public byte payloadByte(int index) {
+            return ColumnarStore.this.payloadByte(row, index);
+        }
+
+        public ByteBuffer payload() {
+            return ColumnarStore.this.payload(row);
+        }
+
+        public int copyPayload(byte[] dst, int dstOffset) {
+            return ColumnarStore.this.copyPayload(row, dst, dstOffset);
+        }
+    }
+
+    private int append(int id, int payloadSize) {
+        if (payloadSize < 0 || payloadSize > slabSize) {
+            throw new IllegalArgumentException(
+                    "payloadSize must be between 0 and the slab size " + slabSize + ": " + payloadSize);
+        }
+        // Start a new slab if the payload would cross the end of the current one
+        long offset = end;
+        if (payloadSize > 0 && offsetInSlab(offset) + (long) payloadSize > slabSize) {
+            offset = (long) (slabIndex(offset) + 1) << slabShift;
+        }
+        while (slabs.size() <= slabIndex(offset + Math.max(payloadSize - 1, 0))) {
+            slabs.add(new OffHeapPayload(slabSize));
+        }
+        end = offset + payloadSize;
+
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        int row = size++;
+        ids[row] = id;
+        offsets[row] = offset;
+        lengths[row] = payloadSize;
+        indexPut(id, row);
+        return row;
+    }
+
+    // Open-addressing index with linear probing, as in IntKeyedCache
+    private void indexPut(int id, int row) {
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        int mask = table.length - 1;
+        int slot = home(id, mask);
+        while (table[slot] != 0 && ids[table[slot] - 1] != id) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+    }
+
+    private void rehash(int newLength) {
+        int[] old = table;
+        table = new int[newLength];
+        int mask = newLength - 1;
+        for (int stored : old) {
+            if (stored != 0) {
+                int slot = home(ids[stored - 1], mask);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = stored;
+            }
+        }
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+        return row;
+    }
+
+    private OffHeapPayload slabOf(long offset) {
+        return slabs.get(slabIndex(offset));
+    }
+
+    private int slabIndex(long offset) {
+        return (int) (offset >>> slabShift);
+    }
+
+    private int offsetInSlab(long offset) {
+        return (int) (offset & (slabSize - 1));
+    }
+
+    private static int home(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,83 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+// Footprint of N small records held as an ArrayList<ExpensiveObject> (heap payloads,
+// allocated eagerly) against the same records in a ColumnarStore. Reports heap and
+// direct memory in use after a full GC, relative to an empty baseline, next to each
+// structure's own estimate, and the time of one full scan summing ids and one payload
+// byte per record.
+//
+// Run: java -Xmx4g ColumnarStoreBenchmark [records] [payloadBytes]
+public class ColumnarStoreBenchmark {
+    // ArrayList object plus its elementData header; one reference per element
+    private static final int LIST_SHALLOW_SIZE = 40;
+    private static final int REFERENCE_SIZE = 4;
+
+    public static void main(String[] args) {
+        int records = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int payloadSize = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+        System.out.printf("%d records x %d-byte payloads%n", records, payloadSize);
+        System.out.printf("%-26s %12s %12s %14s %10s%n", "layout", "heap MB", "direct MB", "estimate MB", "scan ms");
+
+        long[] baseline = measure();
+        ColumnarStore store = new ColumnarStore();
+        for (int i = 0; i < records; i++) {
+            store.addZeroed(i, payloadSize);
+        }
+        long[] used = measure();
+        long start = System.nanoTime();
+        long checksum = 0;
+        ColumnarStore.Cursor cursor = store.cursor();
+        while (cursor.next()) {
+            checksum += cursor.id() + cursor.payloadByte(0);
+        }
+        report("ColumnarStore", used, baseline, store.footprint(), System.nanoTime() - start);
+        int row = store.rowOf(records / 2);
+        store.clear();
+
+        baseline = measure();
+        List<MemoryLeakExamples.ExpensiveObject> list = new ArrayList<>();
+        long estimate = LIST_SHALLOW_SIZE;
+        for (int i = 0; i < records; i++) {
+            MemoryLeakExamples.ExpensiveObject object =
+                    MemoryLeakExamples.ExpensiveObject.untracked(i, new HeapPayload(payloadSize));
+            list.add(object);
+            estimate += REFERENCE_SIZE + object.getEstimatedSize();
+        }
+        used = measure();
+        start = System.nanoTime();
+        for (MemoryLeakExamples.ExpensiveObject object : list) {
+            checksum += object.getId() + object.getPayload().get(0);
+        }
+        report("ArrayList<ExpensiveObject>", used, baseline, estimate, System.nanoTime() - start);
+        System.out.println("(lookup of id " + records / 2 + " -> row " + row + ", checksum " + checksum + ")");
+    }
+
+    private static void report(String label, long[] used, long[] baseline, long estimate, long scanNanos) {
+        System.out.printf("%-26s %12.1f %12.1f %14.1f %10.1f%n", label, (used[0] - baseline[0]) / 1048576.0,
+                (used[1] - baseline[1]) / 1048576.0, estimate / 1048576.0, scanNanos / 1e6);
+    }
+
+    // {heap used, direct memory used} after a full GC
+    private static long[] measure() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100); // let Lifecycle callbacks of dropped objects run
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+        return new long[] {memory.getHeapMemoryUsage().getUsed(), direct};
+    }
+}
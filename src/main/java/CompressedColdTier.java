@@ -0,0 +1,363 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Compresses payloads that have gone cold. Payloads created through newPayload() are
+// tracked weakly. Each one holding uncompressed bytes sits in a queue ordered by when
+// it was last checked; every scan interval a background worker takes only the
+// entries checked at least the idle time ago, deflates those that have not been read
+// or written since, and puts the rest back at the tail. A payload therefore goes cold
+// between one and two idle times after its last access, and a scan costs the entries
+// due, not the number tracked. The next access inflates a cold payload again on the
+// calling thread and queues it once more. Payloads that would not shrink by at least
+// an eighth stay uncompressed.
+//
+// Reports the compression ratio, the CPU time the worker spent deflating, and a
+// histogram of inflate latency on access, so memory saved can be weighed against the
+// CPU spent and the latency added to cold reads.
+final class CompressedColdTier implements AutoCloseable {
+    private static final int LEVEL = Deflater.BEST_SPEED;
+
+    private final long idleNanos;
+    private final Ticker ticker;
+    // Payloads holding uncompressed bytes, in the order they were last checked
+    private final Queue<Tracked> hotQueue = new ConcurrentLinkedQueue<>();
+    // Keeps every handle reachable until its payload is collected and it is enqueued
+    private final Set<Tracked> tracked = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<ColdPayload> collected = new ReferenceQueue<>();
+    private final ScheduledExecutorService worker;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    // Worker thread only; ended by close()
+    private final Deflater deflater = new Deflater(LEVEL);
+    private byte[] deflateBuffer = new byte[0];
+
+    private final LongAdder compressions = new LongAdder();
+    private final LongAdder rawBytesCompressed = new LongAdder();
+    private final LongAdder compressedBytesWritten = new LongAdder();
+    private final LongAdder incompressible = new LongAdder();
+    private final AtomicLong compressCpuNanos = new AtomicLong();
+    private final LongAdder inflations = new LongAdder();
+    private final LatencyHistogram inflateLatency = new LatencyHistogram();
+    // Payloads currently cold: their uncompressed and compressed sizes
+    private final AtomicLong coldRawBytes = new AtomicLong();
+    private final AtomicLong coldCompressedBytes = new AtomicLong();
+
+    CompressedColdTier(Duration idleTime, Duration scanInterval) {
+        this(idleTime, scanInterval, Ticker.system());
+    }
+
+    CompressedColdTier(Duration idleTime, Duration scanInterval, Ticker ticker) {
+        if (idleTime.isNegative() || idleTime.isZero()) {
+            throw new IllegalArgumentException("idleTime must be positive: " + idleTime);
+        }
+        this.idleNanos = idleTime.toNanos();
+        this.ticker = ticker;
+        this.worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cold-tier-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = scanInterval.toNanos();
+        worker.scheduleWithFixedDelay(this::compressIdle, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    // Zero-filled payload of size bytes managed by this tier
+    public Payload newPayload(int size) {
+        ColdPayload payload = new ColdPayload(this, size);
+        tracked.add(payload.tracked);
+        return payload;
+    }
+
+    public long compressionCount() {
+        return compressions.sum();
+    }
+
+    // Uncompressed over compressed bytes for everything the worker has compressed
+    public double compressionRatio() {
+        long compressed = compressedBytesWritten.sum();
+        return (compressed == 0) ? 1.0 : (double) rawBytesCompressed.sum() / compressed;
+    }
+
+    // Bytes not held right now because cold payloads are compressed
+    public long bytesSaved() {
+        return coldRawBytes.get() - coldCompressedBytes.get();
+    }
+
+    public long compressCpuNanos() {
+        return compressCpuNanos.get();
+    }
+
+    public long inflationCount() {
+        return inflations.sum();
+    }
+
+    // Upper bound of the inflate latency at the given percentile (0.0 - 1.0)
+    public long inflateLatencyNanos(double percentile) {
+        return LatencyHistogram.percentile(inflateLatency.snapshot(), percentile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompressedColdTier{compressed=%d, incompressible=%d, ratio=%.2f, saved=%d bytes, "
+                        + "compressCpu=%.1fms, inflated=%d, inflateP50=%dus, inflateP99=%dus}",
+                compressionCount(), incompressible.sum(), compressionRatio(), bytesSaved(),
+                compressCpuNanos() / 1e6, inflationCount(), inflateLatencyNanos(0.5) / 1000,
+                inflateLatencyNanos(0.99) / 1000);
+    }
+
+    // Stops the worker and frees the deflater's native memory once the worker's last
+    // pass has finished; payloads stay usable and cold ones still inflate on access
+    @Override
+    public void close() {
+        worker.shutdownNow();
+        try {
+            while (!worker.awaitTermination(1, TimeUnit.SECONDS)) {
+                // a deflate in progress cannot be interrupted; wait for it
+            }
+            deflater.end();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One pass of the worker over the payloads that are due
+    void compressIdle() {
+        drainCollected();
+        long now = ticker.read();
+        for (Tracked ref = hotQueue.peek(); ref != null && now - ref.checkedAt >= idleNanos;
+                ref = hotQueue.peek()) {
+            hotQueue.poll();
+            ColdPayload payload = ref.get();
+            if (payload != null && payload.compress(now)) {
+                ref.checkedAt = now;
+                hotQueue.add(ref);
+            }
+        }
+    }
+
+    // Called under the payload's monitor when it gains uncompressed bytes
+    private void enqueue(Tracked ref) {
+        if (!ref.queued) {
+            ref.queued = true;
+            ref.checkedAt = ticker.read();
+            hotQueue.add(ref);
+        }
+    }
+
+    // Payloads collected while cold take their compressed bytes with them
+    private void drainCollected() {
+        Reference<? extends ColdPayload> cleared;
+        while ((cleared = collected.poll()) != null) {
+            Tracked ref = (Tracked) cleared;
+            tracked.remove(ref);
+            coldRawBytes.addAndGet(-ref.coldRawBytes);
+            coldCompressedBytes.addAndGet(-ref.coldCompressedBytes);
+        }
+    }
+
+    // Deflates data, or returns null if it would not shrink enough; worker thread only
+    private byte[] deflate(byte[] data) {
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        try {
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            int limit = data.length - (data.length >>> 3);
+            if (deflateBuffer.length < limit) {
+                deflateBuffer = new byte[limit];
+            }
+            int length = 0;
+            while (!deflater.finished() && length < limit) {
+                length += deflater.deflate(deflateBuffer, length, limit - length);
+            }
+            return deflater.finished() ? Arrays.copyOf(deflateBuffer, length) : null;
+        } finally {
+            compressCpuNanos.addAndGet(threads.getCurrentThreadCpuTime() - cpuStart);
+        }
+    }
+
+    // Uses an Inflater per call so no native zlib state outlives the operation
+    private byte[] inflate(byte[] compressed, int size) {
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        byte[] data = new byte[size];
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                length += inflater.inflate(data, length, size - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed payload", e);
+        } finally {
+            inflater.end();
+        }
+        inflations.increment();
+        inflateLatency.record(System.nanoTime() - start);
+        return data;
+    }
+
+    // Heap payload that is either hot (data), cold (compressed) or still untouched and
+    // implicitly zero (neither). Every transition happens under its monitor.
+    private static final class ColdPayload implements Payload {
+        final Tracked tracked;
+        private final CompressedColdTier tier;
+        private final int size;
+        private byte[] data;
+        private byte[] compressed;
+        private int writes;
+        volatile long lastAccess;
+
+        ColdPayload(CompressedColdTier tier, int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size must not be negative: " + size);
+            }
+            this.tier = tier;
+            this.size = size;
+            this.tracked = new Tracked(this, tier.collected);
+            this.lastAccess = tier.ticker.read();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public synchronized byte get(int index) {
+            Objects.checkIndex(index, size);
+            byte[] hot = hot(false);
+            return (hot == null) ? 0 : hot[index];
+        }
+
+        @Override
+        public synchronized void put(int index, byte value) {
+            Objects.checkIndex(index, size);
+            hot(true)[index] = value;
+            writes++;
+        }
+
+        @Override
+        public synchronized void get(int offset, byte[] dst, int dstOffset, int length) {
+            Objects.checkFromIndexSize(offset, length, size);
+            byte[] hot = hot(false);
+            if (hot == null) {
+                Arrays.fill(dst, dstOffset, dstOffset + length, (byte) 0);
+            } else {
+                System.arraycopy(hot, offset, dst, dstOffset, length);
+            }
+        }
+
+        @Override
+        public synchronized void put(int offset, byte[] src, int srcOffset, int length) {
+            Objects.checkFromIndexSize(offset, length, size);
+            System.arraycopy(src, srcOffset, hot(true), offset, length);
+            writes++;
+        }
+
+        // The view keeps its array alive even if the payload is compressed afterwards
+        @Override
+        public synchronized ByteBuffer readOnlyView() {
+            return ByteBuffer.wrap(hot(true)).asReadOnlyBuffer();
+        }
+
+        // The uncompressed footprint: a cold payload can be inflated by any access
+        @Override
+        public long footprint() {
+            return HeapPayload.footprintOf(size);
+        }
+
+        // Hot array, inflating a cold payload first; null if untouched and create is false
+        private byte[] hot(boolean create) {
+            lastAccess = tier.ticker.read();
+            if (compressed != null) {
+                data = tier.inflate(compressed, size);
+                tier.coldRawBytes.addAndGet(-size);
+                tier.coldCompressedBytes.addAndGet(-compressed.length);
+                tracked.coldRawBytes = 0;
+                tracked.coldCompressedBytes = 0;
+                compressed = null;
+                tier.enqueue(tracked);
+            } else if (data == null && create) {
+                data = new byte[size];
+                tier.enqueue(tracked);
+            }
+            return data;
+        }
+
+        // Deflates outside the monitor, then installs the result only if the payload
+        // was not accessed or written in the meantime. Returns whether the payload still
+        // holds uncompressed bytes and so stays queued; worker thread only.
+        boolean compress(long now) {
+            byte[] snapshot;
+            long accessed;
+            int version;
+            synchronized (this) {
+                if (data == null) {
+                    tracked.queued = false;
+                    return false;
+                }
+                if (now - lastAccess < tier.idleNanos) {
+                    return true;
+                }
+                snapshot = data;
+                accessed = lastAccess;
+                version = writes;
+            }
+            byte[] deflated = tier.deflate(snapshot);
+            if (deflated == null) {
+                tier.incompressible.increment();
+                lastAccess = now; // do not retry until it has been idle again
+                return true;
+            }
+            synchronized (this) {
+                if (data != snapshot || lastAccess != accessed || writes != version) {
+                    return true;
+                }
+                compressed = deflated;
+                data = null;
+                tracked.queued = false;
+                tracked.coldRawBytes = size;
+                tracked.coldCompressedBytes = deflated.length;
+                tier.coldRawBytes.addAndGet(size);
+                tier.coldCompressedBytes.addAndGet(deflated.length);
+            }
+            tier.compressions.increment();
+            tier.rawBytesCompressed.add(size);
+            tier.compressedBytesWritten.add(deflated.length);
+            return false;
+        }
+    }
+
+    // Weak handle the worker queues; remembers the cold sizes of a payload so they can
+    // be subtracted once it has been collected
+    private static final class Tracked extends WeakReference<ColdPayload> {
+        volatile int coldRawBytes;
+        volatile int coldCompressedBytes;
+        // Whether it is in hotQueue; changed under the payload's monitor
+        volatile boolean queued;
+        volatile long checkedAt;
+
+        Tracked(ColdPayload payload, ReferenceQueue<ColdPayload> queue) {
+            super(payload, queue);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Content-addressed store of immutable payload bytes. Each payload is hashed with
+// SHA-256 when it is created; payloads with equal content share one array, which is
+// kept alive by a reference count and dropped from the store when the last payload
+// referring to it is released or reclaimed. Writing to a shared payload first gives
+// it a private copy (copy-on-write), so sharing is never observable.
+//
+// Hashing reads the whole payload once, about a millisecond per MB; in exchange N
+// equal payloads cost one array instead of N. Thread-safe.
+final class DedupPayloadStore {
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+    private static final DedupPayloadStore SHARED = new DedupPayloadStore();
+    // Keys of zero-filled content by size, hashed once per size; callers ask for a
+    // handful of page and record sizes, so this stays small
+    private static final Map<Integer, ContentKey> ZERO_KEYS = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(DedupPayloadStore::newDigest);
+
+    // Guarded by this
+    private final Map<ContentKey, Blob> blobs = new HashMap<>();
+    private long uniqueBytes;
+    private long logicalBytes;
+    private long internCount;
+    private long hitCount;
+    private long copyOnWriteCount;
+
+    static DedupPayloadStore shared() {
+        return SHARED;
+    }
+
+    // Payload with the remaining bytes of content; copies them only if they are new
+    public Payload intern(ByteBuffer content) {
+        ContentKey key = keyOf(content);
+        Blob blob = retain(key);
+        if (blob == null) {
+            byte[] data = new byte[content.remaining()];
+            content.duplicate().get(data);
+            blob = retain(key, data);
+        }
+        return new DedupPayload(this, blob);
+    }
+
+    // Zero-filled payload of size bytes; the content is hashed the first time a size
+    // is asked for, without allocating it
+    public Payload zeros(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        ContentKey key = ZERO_KEYS.computeIfAbsent(size, this::zerosKey);
+        Blob blob = retain(key);
+        if (blob == null) {
+            blob = retain(key, new byte[size]);
+        }
+        return new DedupPayload(this, blob);
+    }
+
+    // Distinct contents currently stored
+    public synchronized int uniqueCount() {
+        return blobs.size();
+    }
+
+    public synchronized long uniqueBytes() {
+        return uniqueBytes;
+    }
+
+    // Bytes all live payloads would hold without deduplication
+    public synchronized long logicalBytes() {
+        return logicalBytes;
+    }
+
+    public synchronized long bytesSaved() {
+        return logicalBytes - uniqueBytes;
+    }
+
+    public synchronized long internCount() {
+        return internCount;
+    }
+
+    // Interned payloads whose content was already stored
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    // Shared payloads that were written to and took a private copy
+    public synchronized long copyOnWriteCount() {
+        return copyOnWriteCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DedupPayloadStore{unique=%d (%d bytes), logical=%d bytes, saved=%d bytes, "
+                        + "interned=%d, hits=%d, copyOnWrite=%d}", blobs.size(), uniqueBytes, logicalBytes,
+                logicalBytes - uniqueBytes, internCount, hitCount, copyOnWriteCount);
+    }
+
+    private synchronized Blob retain(ContentKey key) {
+        Blob blob = blobs.get(key);
+        if (blob != null) {
+            hitCount++;
+            internCount++;
+            blob.refs++;
+            logicalBytes += blob.data.length;
+        }
+        return blob;
+    }
+
+    // Stores data unless another thread stored the same content meanwhile
+    private synchronized Blob retain(ContentKey key, byte[] data) {
+        Blob blob = retain(key);
+        if (blob == null) {
+            internCount++;
+            blob = new Blob(key, data);
+            blob.refs = 1;
+            blobs.put(key, blob);
+            uniqueBytes += data.length;
+            logicalBytes += data.length;
+        }
+        return blob;
+    }
+
+    private synchronized void unref(Blob blob, boolean copied) {
+        if (copied) {
+            copyOnWriteCount++;
+        }
+        logicalBytes -= blob.data.length;
+        if (--blob.refs == 0) {
+            blobs.remove(blob.key);
+            uniqueBytes -= blob.data.length;
+        }
+    }
+
+    private ContentKey zerosKey(int size) {
+        MessageDigest digest = digests.get();
+        for (int remaining = size; remaining > 0; remaining -= ZEROS.capacity()) {
+            digest.update(ZEROS.slice(0, Math.min(remaining, ZEROS.capacity())));
+        }
+        return new ContentKey(digest.digest(), size);
+    }
+
+    private ContentKey keyOf(ByteBuffer content) {
+        MessageDigest digest = digests.get();
+        digest.update(content.duplicate());
+        return new ContentKey(digest.digest(), content.remaining());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+    }
+
+    private static final class ContentKey {
+        final byte[] digest;
+        final int size;
+        final int hash;
+
+        ContentKey(byte[] digest, int size) {
+            this.digest = digest;
+            this.size = size;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ContentKey)) return false;
+            ContentKey that = (ContentKey) o;
+            return size == that.size && Arrays.equals(digest, that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Blob {
+        final ContentKey key;
+        final byte[] data;
+        int refs; // guarded by the store
+
+        Blob(ContentKey key, byte[] data) {
+            this.key = key;
+            this.data = data;
+        }
+    }
+
+    // A payload reading from a shared Blob until its first write
+    private static final class DedupPayload implements Payload {
+        // Object header + share/data references, plus the Share and its registration
+        private static final int SHALLOW_SIZE = 80;
+
+        private final Share share;
+        private final Lifecycle.Registration registration;
+        private volatile byte[] data;
+        private boolean owned; // guarded by this
+
+        DedupPayload(DedupPayloadStore store, Blob blob) {
+            this.share = new Share(store, blob);
+            this.data = blob.data;
+            this.registration = Lifecycle.register(this, share);
+        }
+
+        @Override
+        public int size() {
+            return data.length;
+        }
+
+        @Override
+        public byte get(int index) {
+            return data[index];
+        }
+
+        @Override
+        public void get(int offset, byte[] dst, int dstOffset, int length) {
+            System.arraycopy(data, offset, dst, dstOffset, length);
+        }
+
+        @Override
+        public synchronized void put(int index, byte value) {
+            Objects.checkIndex(index, data.length);
+            ownCopy()[index] = value;
+        }
+
+        @Override
+        public synchronized void put(int offset, byte[] src, int srcOffset, int length) {
+            Objects.checkFromIndexSize(offset, length, data.length);
+            System.arraycopy(src, srcOffset, ownCopy(), offset, length);
+        }
+
+        @Override
+        public ByteBuffer readOnlyView() {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+
+        // Counted in full even while shared, so caches weighing by it never under-count
+        @Override
+        public long footprint() {
+            return SHALLOW_SIZE + HeapPayload.footprintOf(data.length);
+        }
+
+        // Copy-on-write: the first write takes a private copy and leaves the share
+        private byte[] ownCopy() {
+            if (!owned) {
+                data = data.clone();
+                owned = true;
+                share.copied = true;
+                registration.close();
+            }
+            return data;
+        }
+
+        // Drops this payload's reference to the shared content; a later write still
+        // copies first, so it can never reach the shared array
+        @Override
+        public void release() {
+            registration.close();
+        }
+    }
+
+    // Must not refer to the DedupPayload, or it would never become unreachable
+    private static final class Share implements Runnable {
+        final DedupPayloadStore store;
+        volatile Blob blob;
+        volatile boolean copied;
+
+        Share(DedupPayloadStore store, Blob blob) {
+            this.store = store;
+            this.blob = blob;
+        }
+
+        // Lifecycle runs this at most once
+        @Override
+        public void run() {
+            Blob released = blob;
+            blob = null;
+            store.unref(released, copied);
+        }
+    }
+}
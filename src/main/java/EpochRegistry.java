@@ -0,0 +1,265 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Registry that reporting threads can scan while writers add and clear, with no lock
+// on the read side and no copy of the contents. The entries live in a backing array
+// published through a volatile Table; writers only ever append past the published
+// size, so a reader that picks up a Table sees a consistent snapshot of it. Growing
+// or clearing publishes a new Table and retires the old array.
+//
+// A retired array still holds its entries and may still be in use by readers, so it
+// is reclaimed (emptied, then kept for reuse or left to the GC) only once every reader
+// that could have seen it has left: each retirement advances a global epoch, readers
+// announce the epoch they entered in, and an array retired in epoch e is reclaimed when
+// no reader is still inside an epoch <= e. Writers try to reclaim on every write while
+// something is pending. Counts the bytes retired and reclaimed. Writers are serialized
+// by the monitor; forEach() and size() never block.
+final class EpochRegistry implements ObjectRegistry {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_FREE_ARRAYS = 2;
+    private static final long IDLE = -1;
+
+    private final AtomicLong epoch = new AtomicLong();
+    private final Queue<Reader> readers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Reader> reader = ThreadLocal.withInitial(this::register);
+    private volatile Table table = new Table(new Object[INITIAL_CAPACITY], 0);
+
+    // Guarded by this
+    private final ArrayDeque<Retired> limbo = new ArrayDeque<>();
+    private final ArrayDeque<Object[]> free = new ArrayDeque<>();
+
+    private final LongAdder retiredBytes = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+    private final LongAdder retiredArrays = new LongAdder();
+    private final LongAdder reusedArrays = new LongAdder();
+
+    @Override
+    public synchronized void add(MemoryLeakExamples.ExpensiveObject object) {
+        Table current = ensureCapacity(1);
+        current.array[current.size] = object;
+        current.size = current.size + 1; // publishes the entry
+        if (!limbo.isEmpty()) {
+            reclaim();
+        }
+    }
+
+    @Override
+    public synchronized void addAll(List<? extends MemoryLeakExamples.ExpensiveObject> objects) {
+        Table current = ensureCapacity(objects.size());
+        int size = current.size;
+        for (MemoryLeakExamples.ExpensiveObject object : objects) {
+            current.array[size++] = object;
+        }
+        current.size = size;
+        if (!limbo.isEmpty()) {
+            reclaim();
+        }
+    }
+
+    @Override
+    public int size() {
+        return table.size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Table old = table;
+        table = new Table(takeFree(INITIAL_CAPACITY), 0);
+        retire(old);
+    }
+
+    // Visits the entries present when the scan started, without locking or copying;
+    // writes made during the scan are not seen. Retired arrays cannot be reclaimed
+    // until the action returns, so keep it short.
+    @Override
+    public void forEach(Consumer<? super MemoryLeakExamples.ExpensiveObject> action) {
+        Reader self = reader.get();
+        self.enter();
+        try {
+            Table snapshot = table;
+            Object[] array = snapshot.array;
+            int size = snapshot.size;
+            for (int i = 0; i < size; i++) {
+                action.accept((MemoryLeakExamples.ExpensiveObject) array[i]);
+            }
+        } finally {
+            self.exit();
+        }
+    }
+
+    // Reclaims what no reader can still see; writers already do this as they write
+    public synchronized void reclaim() {
+        long oldestActive = oldestActiveEpoch();
+        for (Retired retired = limbo.peekFirst(); retired != null && retired.epoch < oldestActive;
+                retired = limbo.peekFirst()) {
+            limbo.pollFirst();
+            Arrays.fill(retired.array, 0, retired.size, null);
+            reclaimedBytes.add(footprint(retired.array));
+            if (free.size() < MAX_FREE_ARRAYS) {
+                free.addLast(retired.array);
+            }
+        }
+    }
+
+    public long retiredBytes() {
+        return retiredBytes.sum();
+    }
+
+    public long reclaimedBytes() {
+        return reclaimedBytes.sum();
+    }
+
+    // Retired but still possibly in use by a reader
+    public long pendingBytes() {
+        return retiredBytes() - reclaimedBytes();
+    }
+
+    public long retiredArrayCount() {
+        return retiredArrays.sum();
+    }
+
+    // Backing arrays taken from reclaimed ones instead of allocated
+    public long reusedArrayCount() {
+        return reusedArrays.sum();
+    }
+
+    public long epoch() {
+        return epoch.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EpochRegistry{size=%d, epoch=%d, retired=%d bytes in %d arrays, reclaimed=%d bytes, "
+                        + "pending=%d bytes, reused=%d}",
+                size(), epoch(), retiredBytes(), retiredArrayCount(), reclaimedBytes(), pendingBytes(),
+                reusedArrayCount());
+    }
+
+    // Table with room for count more entries, growing into a new one if needed
+    private Table ensureCapacity(int count) {
+        Table current = table;
+        int required = current.size + count;
+        if (required <= current.array.length) {
+            return current;
+        }
+        if (required < 0) {
+            throw new IllegalStateException("EpochRegistry is full");
+        }
+        int capacity = Math.max(required, current.array.length * 2);
+        Object[] array = takeFree(capacity);
+        System.arraycopy(current.array, 0, array, 0, current.size);
+        Table grown = new Table(array, current.size);
+        table = grown;
+        retire(current);
+        return grown;
+    }
+
+    // Writers publish the new table before retiring the old one, so readers entering
+    // after the epoch has moved on can only see the new one
+    private void retire(Table old) {
+        long retiredIn = epoch.getAndIncrement();
+        limbo.addLast(new Retired(old.array, old.size, retiredIn));
+        retiredBytes.add(footprint(old.array));
+        retiredArrays.increment();
+        reclaim();
+    }
+
+    private Object[] takeFree(int capacity) {
+        for (Iterator<Object[]> it = free.iterator(); it.hasNext(); ) {
+            Object[] array = it.next();
+            if (array.length >= capacity) {
+                it.remove();
+                reusedArrays.increment();
+                return array;
+            }
+        }
+        return new Object[capacity];
+    }
+
+    // Smallest epoch a reader is inside, or Long.MAX_VALUE; drops records of dead threads
+    private long oldestActiveEpoch() {
+        long oldest = Long.MAX_VALUE;
+        for (Iterator<Reader> it = readers.iterator(); it.hasNext(); ) {
+            Reader r = it.next();
+            long entered = r.epoch;
+            if (entered != IDLE) {
+                oldest = Math.min(oldest, entered);
+            } else if (r.owner.get() == null || !r.owner.get().isAlive()) {
+                it.remove();
+            }
+        }
+        return oldest;
+    }
+
+    private Reader register() {
+        Reader r = new Reader(Thread.currentThread(), epoch);
+        readers.add(r);
+        return r;
+    }
+
+    private static long footprint(Object[] array) {
+        return HeapPayload.arrayFootprint(4L * array.length);
+    }
+
+    private static final class Table {
+        final Object[] array;
+        // Entries below size are never written again while this table is reachable
+        volatile int size;
+
+        Table(Object[] array, int size) {
+            this.array = array;
+            this.size = size;
+        }
+    }
+
+    private static final class Retired {
+        final Object[] array;
+        final int size;
+        final long epoch;
+
+        Retired(Object[] array, int size, long epoch) {
+            this.array = array;
+            this.size = size;
+            this.epoch = epoch;
+        }
+    }
+
+    // Per-thread announcement of the epoch a reader is inside, IDLE outside a scan.
+    // Static and holding only the epoch counter: as a thread-local value it must not
+    // reach the registry, or the ThreadLocal key, and with it the registry and its
+    // entries, would stay reachable from every thread that ever scanned.
+    private static final class Reader {
+        final WeakReference<Thread> owner;
+        final AtomicLong globalEpoch;
+        volatile long epoch = IDLE;
+        // Owner thread only; nested scans stay in the outermost scan's epoch
+        int depth;
+
+        Reader(Thread owner, AtomicLong globalEpoch) {
+            this.owner = new WeakReference<>(owner);
+            this.globalEpoch = globalEpoch;
+        }
+
+        void enter() {
+            if (depth++ == 0) {
+                // Announce first, then read the table; a writer that retires after
+                // this write sees it, and one that retired before it published first
+                epoch = globalEpoch.get();
+            }
+        }
+
+        void exit() {
+            if (--depth == 0) {
+                epoch = IDLE;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+// Count-min sketch of 4-bit counters used by the TinyLFU admission policy to
+// estimate how often a key has been seen recently. Each long holds 16 counters;
+// an element maps to four counters in four different longs and its frequency is
+// the minimum of them. Once the number of increments reaches the sample size,
+// every counter is halved so that old popularity ages out.
+class FrequencySketch {
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] table = new long[1];
+    private int tableMask;
+    private int sampleSize = 10;
+    private int size;
+
+    // Sizes the sketch for a cache holding up to maximumSize entries
+    public void ensureCapacity(long maximumSize) {
+        int maximum = (int) Math.min(Math.max(maximumSize, 1), MAXIMUM_CAPACITY);
+        if (table.length >= maximum) {
+            return;
+        }
+        table = new long[ceilingPowerOfTwo(maximum)];
+        tableMask = table.length - 1;
+        sampleSize = (maximum > Integer.MAX_VALUE / 10) ? Integer.MAX_VALUE : 10 * maximum;
+        size = 0;
+    }
+
+    public int frequency(Object e) {
+        return frequencyOf(spread(e.hashCode()));
+    }
+
+    public void increment(Object e) {
+        incrementOf(spread(e.hashCode()));
+    }
+
+    // Primitive-key variants taking the key's hashCode, so int keys need not be boxed
+    public int frequencyOfHash(int hashCode) {
+        return frequencyOf(spread(hashCode));
+    }
+
+    public void incrementHash(int hashCode) {
+        incrementOf(spread(hashCode));
+    }
+
+    private int frequencyOf(int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private void incrementOf(int hash) {
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    // Halves every counter. Each item bumped four counters, so a quarter of the odd bits
+    // lost to the shift is taken off size before it is halved with them.
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (count >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,71 @@
+import java.nio.ByteBuffer;
+
+// Payload backed by an ordinary byte[]. Arrays of half a G1 region or more are
+// humongous allocations, so large heap payloads go straight to the old generation.
+final class HeapPayload implements Payload {
+    // Object header + array reference, and the byte[] header, with compressed oops
+    private static final int SHALLOW_SIZE = 16;
+    private static final int ARRAY_HEADER_SIZE = 16;
+
+    private final byte[] data;
+
+    HeapPayload(int size) {
+        this.data = new byte[size];
+    }
+
+    private HeapPayload(byte[] data) {
+        this.data = data;
+    }
+
+    // Copies the remaining bytes of buffer without moving its position
+    static HeapPayload copyOf(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return new HeapPayload(data);
+    }
+
+    @Override
+    public int size() {
+        return data.length;
+    }
+
+    @Override
+    public byte get(int index) {
+        return data[index];
+    }
+
+    @Override
+    public void put(int index, byte value) {
+        data[index] = value;
+    }
+
+    @Override
+    public void get(int offset, byte[] dst, int dstOffset, int length) {
+        System.arraycopy(data, offset, dst, dstOffset, length);
+    }
+
+    @Override
+    public void put(int offset, byte[] src, int srcOffset, int length) {
+        System.arraycopy(src, srcOffset, data, offset, length);
+    }
+
+    @Override
+    public ByteBuffer readOnlyView() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long footprint() {
+        return footprintOf(data.length);
+    }
+
+    // Footprint of a heap payload of size bytes
+    static long footprintOf(int size) {
+        return SHALLOW_SIZE + arrayFootprint(size);
+    }
+
+    // Bytes taken by an array of the given byte length, rounded to the 8-byte object alignment
+    static long arrayFootprint(long length) {
+        return (ARRAY_HEADER_SIZE + length + 7L) & ~7L;
+    }
+}
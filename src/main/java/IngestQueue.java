@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Bounded multi-producer/single-consumer queue in front of a sink that is not
+// thread-safe. A producer claims a slot with a single getAndIncrement and publishes
+// its element into it with a lazySet, so producers never contend on a lock or retry a
+// CAS; only when the queue is full does a producer wait for the drainer to free a slot.
+// One daemon drainer thread takes up to batchSize published elements at a time and
+// hands them to the sink as a list, so the sink sees a single writer and is called
+// once per batch rather than once per element.
+//
+// The drainer parks when the queue is empty and is unparked by the next producer.
+// execute() runs a command on the drainer in queue order, e.g. to clear what the
+// sink writes to without a second writer. A sink that throws a RuntimeException loses
+// its batch and the drainer carries on; any other Throwable, such as an
+// OutOfMemoryError, stops the drainer and fails every later offer, flush and execute.
+//
+// On close the drainer marks tail as closed with one CAS. Every slot claimed before
+// the mark is delivered before the drainer exits; a producer whose claim lands after
+// it gets an IllegalStateException, so nothing offered is silently dropped and no
+// flush waits on a drainer that is gone.
+final class IngestQueue<E> implements AutoCloseable {
+    private static final int FULL_SPINS = 64;
+    private static final long FLUSH_POLL_NANOS = 50_000;
+    // Added to tail by the drainer on close; claims at or above it are rejected
+    private static final long CLOSED_MARK = 1L << 62;
+
+    // Holds offered elements and Commands
+    private final AtomicReferenceArray<Object> slots;
+    private final int mask;
+    private final int batchSize;
+    private final Consumer<? super List<E>> sink;
+    private final Thread drainer;
+
+    // Sequence of the next slot to claim, i.e. every offer and execute so far, plus
+    // CLOSED_MARK once the drainer has stopped accepting claims
+    private final AtomicLong tail = new AtomicLong();
+    // Slots claimed before the mark, -1 until then; written by the drainer only
+    private volatile long closedAt = -1;
+    // Next slot the drainer reads; written by the drainer only
+    private volatile long head;
+    // Slots fully processed, elements and commands; written by the drainer only
+    private volatile long processed;
+    // Elements handed to the sink; written by the drainer only
+    private volatile long delivered;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    // Set by the drainer when it returns, after delivering everything before closedAt
+    private volatile boolean exited;
+    // Set once by the drainer if it stopped on an Error
+    private volatile Throwable failure;
+
+    private final LongAdder fullWaits = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    // capacity is rounded up to a power of two. The list passed to the sink is reused
+    // for the next batch, so the sink must copy what it keeps.
+    IngestQueue(int capacity, int batchSize, Consumer<? super List<E>> sink) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.slots = new AtomicReferenceArray<>(1 << -Integer.numberOfLeadingZeros(capacity - 1));
+        this.mask = slots.length() - 1;
+        this.batchSize = batchSize;
+        this.sink = sink;
+        this.drainer = new Thread(this::drainLoop, "ingest-queue-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    // Waits only while the queue is full
+    public void offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        enqueue(e);
+    }
+
+    // Runs command on the drainer once everything offered before it has been handed to
+    // the sink, and before anything offered after it; waits for it and rethrows what it
+    // throws. Must not be called from the sink.
+    public void execute(Runnable command) {
+        if (Thread.currentThread() == drainer) {
+            throw new IllegalStateException("execute() called from the sink");
+        }
+        Command queued = new Command(command);
+        enqueue(queued);
+        flush();
+        Throwable thrown = queued.thrown;
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        } else if (thrown instanceof Error) {
+            throw (Error) thrown;
+        }
+    }
+
+    private void enqueue(Object e) {
+        checkRunning();
+        if (closed) {
+            throw new IllegalStateException("IngestQueue is closed");
+        }
+        long claimed = tail.getAndIncrement();
+        if (claimed >= CLOSED_MARK) {
+            throw new IllegalStateException("IngestQueue is closed");
+        }
+        if (claimed - head >= slots.length()) {
+            awaitSlot(claimed);
+        }
+        slots.lazySet((int) (claimed & mask), e);
+        if (sleeping) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    // Blocks until every element offered before the call has been handed to the sink
+    public void flush() {
+        long target = claimedCount();
+        while (processed < target) {
+            if (Thread.currentThread() == drainer) {
+                throw new IllegalStateException("flush() called from the sink");
+            }
+            checkRunning();
+            checkDrainerFor(target);
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(this, FLUSH_POLL_NANOS);
+        }
+    }
+
+    public long offeredCount() {
+        return claimedCount();
+    }
+
+    public long deliveredCount() {
+        return delivered;
+    }
+
+    // Offered or executed but not yet processed by the drainer
+    public long pendingCount() {
+        return Math.max(0, claimedCount() - processed);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long batchCount() {
+        return batches.sum();
+    }
+
+    // Offers that found the queue full and had to wait for the drainer
+    public long fullWaitCount() {
+        return fullWaits.sum();
+    }
+
+    // The Error that stopped the drainer, or null while it is running
+    public Throwable failure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IngestQueue{capacity=%d, offered=%d, delivered=%d, batches=%d, fullWaits=%d, "
+                        + "failedBatches=%d, failed=%s}",
+                slots.length(), offeredCount(), deliveredCount(), batchCount(), fullWaitCount(), failedBatches.sum(),
+                failure != null);
+    }
+
+    // Delivers what was offered before the call, then stops the drainer; an offer racing
+    // close() is either delivered too or fails with an IllegalStateException
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitSlot(long claimed) {
+        fullWaits.increment();
+        for (int spins = 0; claimed - head >= slots.length(); spins++) {
+            checkRunning();
+            checkDrainerFor(claimed - slots.length() + 1);
+            LockSupport.unpark(drainer);
+            if (spins < FULL_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void checkRunning() {
+        Throwable failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("IngestQueue drainer stopped", failed);
+        }
+    }
+
+    // Fails a wait the drainer can no longer end; one that exits after a close has
+    // processed every slot claimed before the mark, so this is a safety net
+    private void checkDrainerFor(long sequence) {
+        if (exited && processed < sequence) {
+            checkRunning();
+            throw new IllegalStateException("IngestQueue drainer exited before processing slot " + sequence);
+        }
+    }
+
+    // Slots claimed by producers that will be processed, without the closed mark
+    private long claimedCount() {
+        long t = tail.get();
+        return (t >= CLOSED_MARK) ? closedAt : t;
+    }
+
+    private void drainLoop() {
+        try {
+            drain();
+        } catch (Throwable t) {
+            failure = t;
+            System.err.println("IngestQueue drainer stopped: " + t);
+        } finally {
+            exited = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        List<E> batch = new ArrayList<>(batchSize);
+        while (true) {
+            long h = head;
+            long t = claimedCount();
+            Command command = null;
+            while (h < t && batch.size() < batchSize) {
+                int index = (int) (h & mask);
+                Object e = slots.get(index);
+                if (e == null) {
+                    // Slot claimed but not yet published; pick it up on the next pass
+                    break;
+                }
+                slots.lazySet(index, null);
+                h++;
+                if (e instanceof Command) {
+                    command = (Command) e; // deliver what came before it first
+                    break;
+                }
+                batch.add((E) e);
+            }
+            if (!batch.isEmpty() || command != null) {
+                head = h; // free the slots before the sink runs
+                if (!batch.isEmpty()) {
+                    deliver(batch);
+                    delivered += batch.size();
+                    batch.clear();
+                }
+                if (command != null) {
+                    command.run();
+                }
+                processed = h;
+            } else if (h < t) {
+                Thread.yield(); // let the publishing producer finish
+            } else if (closed) {
+                if (closedAt >= 0) {
+                    return; // every slot claimed before the mark is processed
+                }
+                markClosed();
+            } else {
+                sleeping = true;
+                if (tail.get() == head && !closed) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    // closedAt is written before the CAS publishes the mark, so whoever sees the mark in
+    // tail also sees closedAt
+    private void markClosed() {
+        long t;
+        do {
+            t = tail.get();
+            closedAt = t;
+        } while (!tail.compareAndSet(t, t + CLOSED_MARK));
+    }
+
+    // Errors propagate and stop the drainer
+    private void deliver(List<E> batch) {
+        try {
+            sink.accept(batch);
+            batches.increment();
+        } catch (RuntimeException e) {
+            failedBatches.increment();
+            System.err.println("IngestQueue sink failed, dropped " + batch.size() + " elements: " + e);
+        }
+    }
+
+    private static final class Command {
+        final Runnable action;
+        // Read by the caller after processed has moved past the command
+        Throwable thrown;
+
+        Command(Runnable action) {
+            this.action = action;
+        }
+
+        void run() {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                thrown = t;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Multi-threaded add throughput of IngestQueue, drained in batches into a plain
+// ArrayList, against Collections.synchronizedList(new ArrayList<>()), the usual way to
+// make StaticMemoryLeaker's list safe for concurrent producers. A run ends only once
+// the queue has delivered everything, so its rate covers the drainer keeping up, not
+// just producers enqueueing. Both lists drop their contents every 2^20 entries so the
+// benchmark measures adding, not heap growth.
+//
+// Run: java -Xmx1g IngestQueueBenchmark [secondsPerRun] [batchSize]
+public class IngestQueueBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int LIST_LIMIT = 1 << 20;
+
+    // ArrayList that empties itself instead of growing past LIST_LIMIT
+    static final class RecyclingList extends ArrayList<Object> {
+        private static final long serialVersionUID = 1L;
+
+        RecyclingList() {
+            super(LIST_LIMIT);
+        }
+
+        @Override
+        public boolean add(Object e) {
+            if (size() >= LIST_LIMIT) {
+                clear();
+            }
+            return super.add(e);
+        }
+
+        @Override
+        public boolean addAll(Collection<?> c) {
+            if (size() + c.size() > LIST_LIMIT) {
+                clear();
+            }
+            return super.addAll(c);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = (args.length > 0) ? Long.parseLong(args[0]) : 2;
+        int batchSize = (args.length > 1) ? Integer.parseInt(args[1]) : 1024;
+        Object element = new MemoryLeakExamples.ExpensiveObject(0);
+
+        System.out.printf("%8s %20s %20s %12s%n", "threads", "ingest queue ops/s", "synchronized ops/s",
+                "avg batch");
+        for (int threads : THREAD_COUNTS) {
+            RecyclingList drained = new RecyclingList();
+            IngestQueue<Object> queue = new IngestQueue<>(QUEUE_CAPACITY, batchSize, drained::addAll);
+            double queueOps = run(queue::offer, queue::flush, element, threads, seconds);
+            double averageBatch = (double) queue.deliveredCount() / Math.max(1, queue.batchCount());
+            queue.close();
+
+            List<Object> synchronizedList = Collections.synchronizedList(new RecyclingList());
+            double synchronizedOps = run(synchronizedList::add, () -> { }, element, threads, seconds);
+            System.out.printf("%8d %20.0f %20.0f %12.1f%n", threads, queueOps, synchronizedOps, averageBatch);
+        }
+    }
+
+    private static double run(Consumer<Object> add, Runnable finish, Object element, int threads, long seconds)
+            throws InterruptedException {
+        return ThroughputHarness.run(threads, seconds, t -> count -> add.accept(element), finish);
+    }
+}
@@ -0,0 +1,747 @@
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+// int-keyed specialization of BoundedCache for hot paths that would otherwise build a
+// String key per lookup. Keys are never boxed: entries live in parallel primitive
+// arrays (a pool whose indices stay stable), found through an open-addressing,
+// linear-probing index table, and the window / probation / protected LRU queues are
+// linked through int prev/next arrays. Eviction is the same window TinyLFU policy
+// with the same size or weight bound, so a hit allocates nothing.
+//
+// With expireAfterWrite or refreshAfterWrite, entries are also linked in write order,
+// and with expireAfterAccess in access order, each through its own int arrays. Every
+// entry shares the same lifetime, so each order is also expiration order: expired
+// entries are popped off the heads on each operation, with no scan and no timer
+// wheel. refreshAfterWrite reloads an old entry on the executor when it is hit, as in
+// BoundedCache. Hits, misses, load times and evictions by cause go to the same
+// StatsCounter BoundedCache uses; stats() returns a CacheStats snapshot.
+//
+// Thread-safe through a single monitor; it targets allocation-free single-threaded
+// hot loops rather than the high-contention reads BoundedCache is built for. Loaders
+// run outside the monitor, one per key at a time, so a slow load only holds up
+// callers of the same key. Null values are rejected.
+class IntKeyedCache<V> {
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.80;
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private static final byte FREE = 3;
+
+    @FunctionalInterface
+    interface IntWeigher<V> {
+        int weigh(int key, V value);
+    }
+
+    private final IntWeigher<? super V> weigher;
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final StatsCounter stats = new StatsCounter();
+    // Keys are boxed only on a miss or a refresh, never on a hit
+    private final SingleFlight<Integer, V> loads = new SingleFlight<>();
+    private final SingleFlight<Integer, V> refreshes = new SingleFlight<>();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder refreshFailureCount = new LongAdder();
+    private final Ticker ticker;
+    private final Executor executor;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final long refreshAfterWriteNanos;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    // Index table: slot -> entry index + 1, 0 when empty
+    private int[] table;
+
+    // Entry pool
+    private int[] keys;
+    private Object[] values;
+    private int[] weights;
+    private int[] prev;
+    private int[] next;
+    private byte[] queues;
+    // Oldest first; null unless a write or access duration is configured
+    private final OrderList writeOrder;
+    private final OrderList accessOrder;
+    private int poolSize;
+    private int freeHead = NIL;
+
+    private final int[] heads = {NIL, NIL, NIL};
+    private final int[] tails = {NIL, NIL, NIL};
+    private int size;
+    private long weightedSize;
+    private long windowWeightedSize;
+    private long protectedWeightedSize;
+
+    private IntKeyedCache(Builder<V> builder) {
+        long maximum = builder.maximum;
+        if (maximum <= 0) {
+            throw new IllegalArgumentException("maximum must be positive: " + maximum);
+        }
+        long expectedSize = builder.weighted ? Math.min(maximum, 1 << 20) : maximum;
+        this.maximum = maximum;
+        this.weigher = builder.weigher;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.executor = builder.executor;
+        this.ticker = builder.ticker;
+        this.windowMaximum = Math.max(1, (long) (maximum * WINDOW_PERCENT));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_PERCENT);
+        sketch.ensureCapacity(expectedSize);
+
+        int capacity = (int) Math.min(Math.max(expectedSize, INITIAL_CAPACITY), 1 << 20);
+        keys = new int[capacity];
+        values = new Object[capacity];
+        weights = new int[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        queues = new byte[capacity];
+        writeOrder = (expireAfterWriteNanos > 0 || refreshAfterWriteNanos > 0) ? new OrderList(capacity) : null;
+        accessOrder = (expireAfterAccessNanos > 0) ? new OrderList(capacity) : null;
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    public static <V> IntKeyedCache<V> withMaximumSize(long maximumSize) {
+        return IntKeyedCache.<V>newBuilder().maximumSize(maximumSize).build();
+    }
+
+    public static <V> IntKeyedCache<V> withMaximumWeight(long maximumWeight, IntWeigher<? super V> weigher) {
+        return IntKeyedCache.<V>newBuilder().maximumWeight(maximumWeight, weigher).build();
+    }
+
+    public static <V> Builder<V> newBuilder() {
+        return new Builder<>();
+    }
+
+    // On a miss exactly one caller per key runs the loader, outside the monitor;
+    // concurrent callers for the same key wait for its result
+    public V get(int key, IntFunction<? extends V> loader) {
+        V value;
+        boolean refresh = false;
+        synchronized (this) {
+            int entry = findLive(key);
+            if (entry == NIL) {
+                value = null;
+            } else {
+                stats.recordHits(1);
+                onAccess(entry);
+                value = value(entry);
+                refresh = needsRefresh(entry);
+            }
+        }
+        if (value != null) {
+            if (refresh) {
+                refresh(key, value, loader);
+            }
+            return value;
+        }
+        stats.recordMisses(1);
+        return loads.load(key, k -> loadAndPut(key, loader));
+    }
+
+    public synchronized V getIfPresent(int key) {
+        int entry = findLive(key);
+        if (entry == NIL) {
+            stats.recordMisses(1);
+            return null;
+        }
+        stats.recordHits(1);
+        onAccess(entry);
+        return value(entry);
+    }
+
+    public synchronized void put(int key, V value) {
+        Objects.requireNonNull(value);
+        int entry = findLive(key);
+        if (entry == NIL) {
+            insert(key, value);
+            return;
+        }
+        update(entry, value);
+        onAccess(entry);
+        evict();
+    }
+
+    public synchronized V invalidate(int key) {
+        int entry = find(key);
+        if (entry == NIL) {
+            return null;
+        }
+        V value = value(entry);
+        removeEntry(entry);
+        return value;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, 0, poolSize, null);
+        poolSize = 0;
+        freeHead = NIL;
+        Arrays.fill(heads, NIL);
+        Arrays.fill(tails, NIL);
+        if (writeOrder != null) {
+            writeOrder.clear();
+        }
+        if (accessOrder != null) {
+            accessOrder.clear();
+        }
+        size = 0;
+        weightedSize = 0;
+        windowWeightedSize = 0;
+        protectedWeightedSize = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long weightedSize() {
+        return weightedSize;
+    }
+
+    public long hitCount() {
+        return stats().hitCount();
+    }
+
+    public long missCount() {
+        return stats().missCount();
+    }
+
+    // Entries evicted by the size or weight bound
+    public long evictionCount() {
+        return stats.evictionCount(RemovalCause.SIZE);
+    }
+
+    // Entries removed by expireAfterWrite/expireAfterAccess, not counted in evictionCount
+    public long expirationCount() {
+        return stats.evictionCount(RemovalCause.EXPIRED);
+    }
+
+    // Background reloads started by refreshAfterWrite
+    public long refreshCount() {
+        return refreshCount.sum();
+    }
+
+    // Refreshes whose loader threw or returned null; the entry keeps its current value
+    public long refreshFailureCount() {
+        return refreshFailureCount.sum();
+    }
+
+    public synchronized CacheStats stats() {
+        return stats.snapshot(size, weightedSize);
+    }
+
+    // Removes expired entries now instead of on the next operation
+    public synchronized void cleanUp() {
+        expireEntries();
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int entry) {
+        return (V) values[entry];
+    }
+
+    private V loadAndPut(int key, IntFunction<? extends V> loader) {
+        // A previous leader may have finished between our miss and joining the flight
+        synchronized (this) {
+            int entry = findLive(key);
+            if (entry != NIL) {
+                return value(entry);
+            }
+        }
+        V loaded = timedLoad(key, loader);
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (this) {
+            // A put that raced the load wins
+            int entry = findLive(key);
+            if (entry != NIL) {
+                return value(entry);
+            }
+            insert(key, loaded);
+            return loaded;
+        }
+    }
+
+    private V timedLoad(int key, IntFunction<? extends V> loader) {
+        long start = System.nanoTime();
+        V loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        if (loaded == null) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+        } else {
+            stats.recordLoadSuccess(System.nanoTime() - start);
+        }
+        return loaded;
+    }
+
+    private boolean needsRefresh(int entry) {
+        return refreshAfterWriteNanos > 0
+                && (ticker.read() - writeOrder.times[entry]) >= refreshAfterWriteNanos
+                && !refreshes.isLoading(keys[entry]);
+    }
+
+    private void refresh(int key, V current, IntFunction<? extends V> loader) {
+        refreshCount.increment();
+        refreshes.loadAsync(key, k -> CompletableFuture.supplyAsync(() -> timedLoad(key, loader), executor))
+                .whenComplete((value, error) -> {
+                    if (error != null || value == null) {
+                        refreshFailureCount.increment();
+                    } else {
+                        replaceIfSame(key, current, value);
+                    }
+                });
+    }
+
+    // Installs a refreshed value unless the entry was removed or replaced meanwhile
+    private synchronized void replaceIfSame(int key, V expected, V value) {
+        int entry = find(key);
+        if (entry != NIL && values[entry] == expected) {
+            update(entry, value);
+            evict();
+        }
+    }
+
+    private void update(int entry, V value) {
+        int weight = weigher.weigh(keys[entry], value);
+        int delta = weight - weights[entry];
+        values[entry] = value;
+        weights[entry] = weight;
+        weightedSize += delta;
+        if (queues[entry] == WINDOW) {
+            windowWeightedSize += delta;
+        } else if (queues[entry] == PROTECTED) {
+            protectedWeightedSize += delta;
+        }
+        if (writeOrder != null) {
+            writeOrder.moveToLast(entry, ticker.read());
+        }
+    }
+
+    // Index of the live entry for key, or NIL; expires what is due first
+    private int findLive(int key) {
+        expireEntries();
+        return find(key);
+    }
+
+    private void expireEntries() {
+        if (expireAfterWriteNanos > 0) {
+            expireFrom(writeOrder, expireAfterWriteNanos);
+        }
+        if (accessOrder != null) {
+            expireFrom(accessOrder, expireAfterAccessNanos);
+        }
+    }
+
+    private void expireFrom(OrderList order, long lifetimeNanos) {
+        long now = ticker.read();
+        while (order.head != NIL && (now - order.times[order.head]) >= lifetimeNanos) {
+            int entry = order.head;
+            stats.recordEviction(RemovalCause.EXPIRED, weights[entry]);
+            removeEntry(entry);
+        }
+    }
+
+    private void insert(int key, V value) {
+        int weight = weigher.weigh(key, value);
+        int entry = allocateEntry();
+        keys[entry] = key;
+        values[entry] = value;
+        weights[entry] = weight;
+        queues[entry] = WINDOW;
+        linkLast(WINDOW, entry);
+        indexPut(key, entry);
+        if (writeOrder != null) {
+            writeOrder.linkLast(entry, ticker.read());
+        }
+        if (accessOrder != null) {
+            accessOrder.linkLast(entry, ticker.read());
+        }
+        size++;
+        weightedSize += weight;
+        windowWeightedSize += weight;
+        sketch.incrementHash(key);
+        evict();
+    }
+
+    private void onAccess(int entry) {
+        sketch.incrementHash(keys[entry]);
+        if (accessOrder != null) {
+            accessOrder.moveToLast(entry, ticker.read());
+        }
+        switch (queues[entry]) {
+            case WINDOW:
+                moveToLast(WINDOW, entry);
+                break;
+            case PROBATION:
+                unlinkFrom(PROBATION, entry);
+                queues[entry] = PROTECTED;
+                linkLast(PROTECTED, entry);
+                protectedWeightedSize += weights[entry];
+                while (protectedWeightedSize > protectedMaximum && heads[PROTECTED] != NIL) {
+                    int demoted = heads[PROTECTED];
+                    unlinkFrom(PROTECTED, demoted);
+                    protectedWeightedSize -= weights[demoted];
+                    queues[demoted] = PROBATION;
+                    linkLast(PROBATION, demoted);
+                }
+                break;
+            case PROTECTED:
+                moveToLast(PROTECTED, entry);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Same admission walk as BoundedCache.evict, over entry indices
+    private void evict() {
+        int firstCandidate = NIL;
+        while (windowWeightedSize > windowMaximum) {
+            int entry = heads[WINDOW];
+            unlinkFrom(WINDOW, entry);
+            windowWeightedSize -= weights[entry];
+            queues[entry] = PROBATION;
+            linkLast(PROBATION, entry);
+            if (firstCandidate == NIL) {
+                firstCandidate = entry;
+            }
+        }
+
+        int candidate = firstCandidate;
+        while (weightedSize > maximum) {
+            int victim = heads[PROBATION];
+            if (victim == NIL || victim == candidate) {
+                if (victim == NIL) {
+                    victim = (heads[PROTECTED] != NIL) ? heads[PROTECTED] : heads[WINDOW];
+                    if (victim == NIL) {
+                        break;
+                    }
+                }
+                candidate = NIL;
+                evictEntry(victim);
+                continue;
+            }
+            if (candidate == NIL) {
+                evictEntry(victim);
+                continue;
+            }
+            int nextCandidate = next[candidate];
+            if (sketch.frequencyOfHash(keys[candidate]) > sketch.frequencyOfHash(keys[victim])) {
+                evictEntry(victim);
+            } else {
+                evictEntry(candidate);
+            }
+            candidate = nextCandidate;
+        }
+    }
+
+    private void evictEntry(int entry) {
+        stats.recordEviction(RemovalCause.SIZE, weights[entry]);
+        removeEntry(entry);
+    }
+
+    private void removeEntry(int entry) {
+        byte queue = queues[entry];
+        unlinkFrom(queue, entry);
+        if (queue == WINDOW) {
+            windowWeightedSize -= weights[entry];
+        } else if (queue == PROTECTED) {
+            protectedWeightedSize -= weights[entry];
+        }
+        indexRemove(keys[entry]);
+        if (writeOrder != null) {
+            writeOrder.unlink(entry);
+        }
+        if (accessOrder != null) {
+            accessOrder.unlink(entry);
+        }
+        size--;
+        weightedSize -= weights[entry];
+        values[entry] = null;
+        queues[entry] = FREE;
+        next[entry] = freeHead;
+        freeHead = entry;
+    }
+
+    private int allocateEntry() {
+        if (freeHead != NIL) {
+            int entry = freeHead;
+            freeHead = next[entry];
+            return entry;
+        }
+        if (poolSize == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+            queues = Arrays.copyOf(queues, capacity);
+            if (writeOrder != null) {
+                writeOrder.grow(capacity);
+            }
+            if (accessOrder != null) {
+                accessOrder.grow(capacity);
+            }
+        }
+        return poolSize++;
+    }
+
+    // Intrusive LRU queues over entry indices
+
+    private void linkLast(byte queue, int entry) {
+        int last = tails[queue];
+        prev[entry] = last;
+        next[entry] = NIL;
+        if (last == NIL) {
+            heads[queue] = entry;
+        } else {
+            next[last] = entry;
+        }
+        tails[queue] = entry;
+    }
+
+    private void unlinkFrom(byte queue, int entry) {
+        int p = prev[entry];
+        int n = next[entry];
+        if (p == NIL) {
+            heads[queue] = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NIL) {
+            tails[queue] = p;
+        } else {
+            prev[n] = p;
+        }
+        prev[entry] = NIL;
+        next[entry] = NIL;
+    }
+
+    private void moveToLast(byte queue, int entry) {
+        if (tails[queue] != entry) {
+            unlinkFrom(queue, entry);
+            linkLast(queue, entry);
+        }
+    }
+
+
+    // Open-addressing index with linear probing and backward-shift deletion
+
+    private int find(int key) {
+        int mask = table.length - 1;
+        for (int slot = home(key, mask); ; slot = (slot + 1) & mask) {
+            int stored = table[slot];
+            if (stored == 0) {
+                return NIL;
+            }
+            if (keys[stored - 1] == key) {
+                return stored - 1;
+            }
+        }
+    }
+
+    private void indexPut(int key, int entry) {
+        // Keep the load factor at or below one half so probe sequences stay short
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        int mask = table.length - 1;
+        int slot = home(key, mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void indexRemove(int key) {
+        int mask = table.length - 1;
+        int slot = home(key, mask);
+        while (keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = 0;
+
+        // Shift back any following entries whose probe sequence passed through the hole
+        int hole = slot;
+        for (int i = (hole + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int desired = home(keys[table[i] - 1], mask);
+            boolean reachable = (hole <= i)
+                    ? (desired <= hole || desired > i)
+                    : (desired <= hole && desired > i);
+            if (reachable) {
+                table[hole] = table[i];
+                table[i] = 0;
+                hole = i;
+            }
+        }
+    }
+
+    private void rehash(int newLength) {
+        int[] old = table;
+        table = new int[newLength];
+        int mask = newLength - 1;
+        for (int stored : old) {
+            if (stored != 0) {
+                int slot = home(keys[stored - 1], mask);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = stored;
+            }
+        }
+    }
+
+    private static int home(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+    }
+
+    // Entries linked oldest first through int arrays, each with the time it was linked
+    private static final class OrderList {
+        long[] times;
+        int[] prev;
+        int[] next;
+        int head = NIL;
+        int tail = NIL;
+
+        OrderList(int capacity) {
+            times = new long[capacity];
+            prev = new int[capacity];
+            next = new int[capacity];
+        }
+
+        void grow(int capacity) {
+            times = Arrays.copyOf(times, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+
+        void linkLast(int entry, long time) {
+            times[entry] = time;
+            prev[entry] = tail;
+            next[entry] = NIL;
+            if (tail == NIL) {
+                head = entry;
+            } else {
+                next[tail] = entry;
+            }
+            tail = entry;
+        }
+
+        void unlink(int entry) {
+            int p = prev[entry];
+            int n = next[entry];
+            if (p == NIL) {
+                head = n;
+            } else {
+                next[p] = n;
+            }
+            if (n == NIL) {
+                tail = p;
+            } else {
+                prev[n] = p;
+            }
+        }
+
+        void moveToLast(int entry, long time) {
+            unlink(entry);
+            linkLast(entry, time);
+        }
+
+        void clear() {
+            head = NIL;
+            tail = NIL;
+        }
+    }
+
+    static final class Builder<V> {
+        private IntWeigher<? super V> weigher = (key, value) -> 1;
+        private long maximum = -1;
+        private boolean weighted;
+        private long expireAfterWriteNanos;
+        private long expireAfterAccessNanos;
+        private long refreshAfterWriteNanos;
+        private Executor executor = ForkJoinPool.commonPool();
+        private Ticker ticker = Ticker.system();
+
+        private Builder() {
+        }
+
+        public Builder<V> maximumSize(long maximumSize) {
+            this.maximum = maximumSize;
+            this.weighted = false;
+            return this;
+        }
+
+        public Builder<V> maximumWeight(long maximumWeight, IntWeigher<? super V> weigher) {
+            this.maximum = maximumWeight;
+            this.weigher = Objects.requireNonNull(weigher);
+            this.weighted = true;
+            return this;
+        }
+
+        public Builder<V> expireAfterWrite(Duration duration) {
+            this.expireAfterWriteNanos = checkPositive(duration, "expireAfterWrite");
+            return this;
+        }
+
+        // Entries expire once neither read nor written for this long
+        public Builder<V> expireAfterAccess(Duration duration) {
+            this.expireAfterAccessNanos = checkPositive(duration, "expireAfterAccess");
+            return this;
+        }
+
+        // Hits on entries older than this trigger a background reload with the caller's loader
+        public Builder<V> refreshAfterWrite(Duration duration) {
+            this.refreshAfterWriteNanos = checkPositive(duration, "refreshAfterWrite");
+            return this;
+        }
+
+        // Runs refreshes; defaults to the common ForkJoinPool
+        public Builder<V> executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        public Builder<V> ticker(Ticker ticker) {
+            this.ticker = Objects.requireNonNull(ticker);
+            return this;
+        }
+
+        public IntKeyedCache<V> build() {
+            if (maximum < 0) {
+                throw new IllegalStateException("maximumSize or maximumWeight must be set");
+            }
+            return new IntKeyedCache<>(this);
+        }
+
+        private static long checkPositive(Duration duration, String name) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException(name + " must be positive: " + duration);
+            }
+            return duration.toNanos();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.lang.management.ManagementFactory;
+
+// Bytes allocated and time per cache hit for the NaiveCacheExample hot path,
+// cache.get("key_" + i), against IntKeyedCache.get(i). Allocation is read from the
+// per-thread allocation counter of the HotSpot ThreadMXBean, so the numbers are exact
+// rather than sampled. Both caches hold the same warmed key set with small payloads,
+// so every measured lookup is a hit.
+//
+// Run: java -Xmx1g IntKeyedCacheBenchmark [lookups]
+public class IntKeyedCacheBenchmark {
+    private static final int KEYS = 1024;
+    private static final int PAYLOAD_SIZE = 64;
+    private static final int WARMUP_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int lookups = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000_000;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // Same configuration NaiveCacheExample uses, minus the println in its loader
+        BoundedCache<String, MemoryLeakExamples.ExpensiveObject> stringCache =
+                MemoryLeakExamples.NaiveCacheExample.newBuilder(64L * 1024 * 1024).build();
+        IntKeyedCache<MemoryLeakExamples.ExpensiveObject> intCache = IntKeyedCache.withMaximumWeight(
+                64L * 1024 * 1024, (key, value) -> (int) value.getEstimatedSize());
+        for (int i = 0; i < KEYS; i++) {
+            stringCache.get("key_" + i, k -> new MemoryLeakExamples.ExpensiveObject(k.hashCode(), PAYLOAD_SIZE));
+            intCache.get(i, k -> new MemoryLeakExamples.ExpensiveObject(k, PAYLOAD_SIZE));
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runStringKeys(stringCache, lookups / 10);
+            runIntKeys(intCache, lookups / 10);
+        }
+
+        long threadId = Thread.currentThread().threadId();
+        long bytes = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long checksum = runStringKeys(stringCache, lookups);
+        long stringNanos = System.nanoTime() - start;
+        long stringBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+        bytes = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        checksum += runIntKeys(intCache, lookups);
+        long intNanos = System.nanoTime() - start;
+        long intBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+        System.out.printf("%-32s %14s %14s%n", "cache", "bytes/lookup", "ns/lookup");
+        System.out.printf("%-32s %14.2f %14.2f%n", "NaiveCacheExample (String keys)",
+                (double) stringBytes / lookups, (double) stringNanos / lookups);
+        System.out.printf("%-32s %14.2f %14.2f%n", "IntKeyedCache (int keys)",
+                (double) intBytes / lookups, (double) intNanos / lookups);
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    private static long runStringKeys(BoundedCache<String, MemoryLeakExamples.ExpensiveObject> cache,
+            int lookups) {
+        long sum = 0;
+        for (int i = 0; i < lookups; i++) {
+            sum += cache.get("key_" + (i & (KEYS - 1)),
+                    k -> new MemoryLeakExamples.ExpensiveObject(k.hashCode(), PAYLOAD_SIZE)).getId();
+        }
+        return sum;
+    }
+
+    private static long runIntKeys(IntKeyedCache<MemoryLeakExamples.ExpensiveObject> cache, int lookups) {
+        long sum = 0;
+        for (int i = 0; i < lookups; i++) {
+            sum += cache.get(i & (KEYS - 1),
+                    k -> new MemoryLeakExamples.ExpensiveObject(k, PAYLOAD_SIZE)).getId();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free histogram of durations in nanoseconds with power-of-two buckets: bucket i
+// counts values in [2^(i-1), 2^i). Recording is one LongAdder increment, and
+// percentiles are accurate to within a factor of two, which is enough to tell a
+// hash lookup from a 1MB allocation.
+final class LatencyHistogram {
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        counts[bucketOf(nanos)].increment();
+    }
+
+    public long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return snapshot;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0.0 - 1.0), or 0 if empty
+    static long percentile(long[] snapshot, double percentile) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    static long upperBound(int bucket) {
+        return (bucket >= 63) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    private static int bucketOf(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+}
@@ -0,0 +1,127 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+// Heap payload whose array is allocated on the first write instead of in the
+// constructor. Until then reads see zeros and no array exists, so objects that are
+// created but never touched cost a few bytes rather than their full payload. Views of
+// an untouched payload of up to 1MB share one read-only block of zeros, so writing
+// a cache snapshot does not materialize everything it saves.
+//
+// Publication is double-checked locking on a volatile field: the array is built and
+// zeroed before the volatile write that publishes it, so a reader that sees the
+// reference also sees a fully initialized payload, and the lock makes sure only one
+// thread ever allocates it.
+final class LazyPayload implements Payload {
+    // Object header + size + delegate reference, with compressed oops
+    private static final int SHALLOW_SIZE = 24;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(1024 * 1024).asReadOnlyBuffer();
+
+    private static final LongAdder created = new LongAdder();
+    private static final LongAdder materialized = new LongAdder();
+    private static final LongAdder materializedBytes = new LongAdder();
+
+    private final int size;
+    private volatile HeapPayload delegate;
+
+    LazyPayload(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        this.size = size;
+        created.increment();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        HeapPayload payload = delegate;
+        if (payload == null) {
+            Objects.checkIndex(index, size);
+            return 0;
+        }
+        return payload.get(index);
+    }
+
+    @Override
+    public void put(int index, byte value) {
+        materialize().put(index, value);
+    }
+
+    @Override
+    public void get(int offset, byte[] dst, int dstOffset, int length) {
+        HeapPayload payload = delegate;
+        if (payload == null) {
+            Objects.checkFromIndexSize(offset, length, size);
+            Arrays.fill(dst, dstOffset, dstOffset + length, (byte) 0);
+        } else {
+            payload.get(offset, dst, dstOffset, length);
+        }
+    }
+
+    @Override
+    public void put(int offset, byte[] src, int srcOffset, int length) {
+        materialize().put(offset, src, srcOffset, length);
+    }
+
+    @Override
+    public ByteBuffer readOnlyView() {
+        HeapPayload payload = delegate;
+        if (payload == null && size <= ZEROS.capacity()) {
+            return ZEROS.slice(0, size);
+        }
+        return materialize().readOnlyView();
+    }
+
+    // Caches weigh entries on insert, before most are touched, so this reports the
+    // footprint once materialized rather than the few bytes held until then
+    @Override
+    public long footprint() {
+        return SHALLOW_SIZE + HeapPayload.footprintOf(size);
+    }
+
+    public boolean isMaterialized() {
+        return delegate != null;
+    }
+
+    static long createdCount() {
+        return created.sum();
+    }
+
+    // Payloads that ever allocated their array
+    static long materializedCount() {
+        return materialized.sum();
+    }
+
+    static long materializedBytes() {
+        return materializedBytes.sum();
+    }
+
+    static String summary() {
+        long total = createdCount();
+        long used = materializedCount();
+        return String.format("Payloads materialized: %d of %d (%.1f%%), %d bytes allocated",
+                used, total, (total == 0) ? 0.0 : 100.0 * used / total, materializedBytes());
+    }
+
+    private HeapPayload materialize() {
+        HeapPayload payload = delegate;
+        if (payload == null) {
+            synchronized (this) {
+                payload = delegate;
+                if (payload == null) {
+                    payload = new HeapPayload(size);
+                    delegate = payload;
+                    materialized.increment();
+                    materializedBytes.add(size);
+                }
+            }
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,173 @@
+import com.sun.management.GcInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Shared replacement for finalize(). Objects register a reclamation callback once,
+// in their constructor, and a single Cleaner runs it after the object has become
+// phantom reachable. Unlike a finalizer the callback cannot see the object, so it
+// cannot resurrect it, and the object is reclaimed in the same GC cycle that finds it
+// unreachable instead of waiting for the finalizer thread and a second cycle. The
+// callback must therefore not capture the object it is registered for; it gets any
+// state it needs (an id, a buffer to free) up front.
+//
+// Every registration is counted per owner type: how many were registered, closed
+// explicitly and reclaimed by the GC. Two histograms cover reclaimed objects: their
+// age (registration to callback, mostly how long the object lived) and their
+// reclamation delay, from the end of the most recent GC, the one that found them
+// unreachable, to the Cleaner running the callback. The delay has the millisecond
+// resolution of the GC MXBeans' timestamps.
+final class Lifecycle {
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Map<Class<?>, TypeStats> stats = new ConcurrentHashMap<>();
+
+    private Lifecycle() {
+    }
+
+    // Runs onReclaim once, when owner is reclaimed or when the registration is closed
+    static Registration register(Object owner, Runnable onReclaim) {
+        TypeStats typeStats = stats.computeIfAbsent(owner.getClass(), type -> new TypeStats());
+        typeStats.registered.increment();
+        Reclaimer reclaimer = new Reclaimer(typeStats, onReclaim);
+        return new Registration(reclaimer, CLEANER.register(owner, reclaimer));
+    }
+
+    static long registeredCount(Class<?> type) {
+        TypeStats typeStats = stats.get(type);
+        return (typeStats == null) ? 0 : typeStats.registered.sum();
+    }
+
+    static long closedCount(Class<?> type) {
+        TypeStats typeStats = stats.get(type);
+        return (typeStats == null) ? 0 : typeStats.closed.sum();
+    }
+
+    static long reclaimedCount(Class<?> type) {
+        TypeStats typeStats = stats.get(type);
+        return (typeStats == null) ? 0 : typeStats.reclaimed.sum();
+    }
+
+    // Registered objects that are neither closed nor reclaimed yet
+    static long liveCount(Class<?> type) {
+        return registeredCount(type) - closedCount(type) - reclaimedCount(type);
+    }
+
+    // Time from the end of the GC that found an object unreachable to its callback
+    // running, at the given percentile; 0 before anything of this type was reclaimed
+    static long reclamationDelayNanos(Class<?> type, double percentile) {
+        TypeStats typeStats = stats.get(type);
+        return (typeStats == null) ? 0 : LatencyHistogram.percentile(typeStats.delays.snapshot(), percentile);
+    }
+
+    // One line per registered type, sorted by name
+    static String report() {
+        Map<String, TypeStats> sorted = new TreeMap<>();
+        stats.forEach((type, typeStats) -> sorted.put(type.getName(), typeStats));
+        StringBuilder report = new StringBuilder(String.format("%-52s %10s %8s %10s %8s %12s %12s%n",
+                "type", "registered", "closed", "reclaimed", "live", "p50 age ms", "p99 delay ms"));
+        sorted.forEach((name, typeStats) -> {
+            long registered = typeStats.registered.sum();
+            long closed = typeStats.closed.sum();
+            long reclaimed = typeStats.reclaimed.sum();
+            long medianAge = LatencyHistogram.percentile(typeStats.ages.snapshot(), 0.5);
+            long delay = LatencyHistogram.percentile(typeStats.delays.snapshot(), 0.99);
+            report.append(String.format("%-52s %10d %8d %10d %8d %12.1f %12.1f%n", name, registered, closed,
+                    reclaimed, registered - closed - reclaimed, medianAge / 1e6, delay / 1e6));
+        });
+        return report.toString();
+    }
+
+    // Handle for ending an object's lifecycle explicitly, e.g. from close() or release()
+    static final class Registration {
+        private final Reclaimer reclaimer;
+        private final Cleaner.Cleanable cleanable;
+
+        private Registration(Reclaimer reclaimer, Cleaner.Cleanable cleanable) {
+            this.reclaimer = reclaimer;
+            this.cleanable = cleanable;
+        }
+
+        // Runs the callback now, unless it already ran; the GC will not run it again
+        void close() {
+            reclaimer.closed = true;
+            cleanable.clean();
+        }
+    }
+
+    private static final class TypeStats {
+        final LongAdder registered = new LongAdder();
+        final LongAdder closed = new LongAdder();
+        final LongAdder reclaimed = new LongAdder();
+        // Nanoseconds from registration to reclamation
+        final LatencyHistogram ages = new LatencyHistogram();
+        // Nanoseconds from the end of the clearing GC to reclamation
+        final LatencyHistogram delays = new LatencyHistogram();
+    }
+
+    private static final class Reclaimer implements Runnable {
+        final TypeStats stats;
+        final Runnable onReclaim;
+        final long registeredAt = System.nanoTime();
+        volatile boolean closed;
+
+        Reclaimer(TypeStats stats, Runnable onReclaim) {
+            this.stats = stats;
+            this.onReclaim = onReclaim;
+        }
+
+        // The Cleanable guarantees this runs at most once
+        @Override
+        public void run() {
+            if (closed) {
+                stats.closed.increment();
+            } else {
+                long now = System.nanoTime();
+                stats.reclaimed.increment();
+                stats.ages.record(now - registeredAt);
+                long gcEnd = GcClock.lastEndNanos();
+                if (gcEnd >= registeredAt) {
+                    stats.delays.record(Math.max(0, now - gcEnd));
+                }
+            }
+            onReclaim.run();
+        }
+    }
+
+    // End of the most recent GC on the System.nanoTime() scale. GcInfo is only fetched
+    // when the collection count has moved, so most reclamations just sum the counts.
+    // Runs on the Cleaner thread.
+    private static final class GcClock {
+        private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+        // nanoTime at JVM start; GcInfo times are milliseconds since then
+        private static final long START_NANOS =
+                System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000L;
+        private static long lastCount = -1;
+        private static long lastEndNanos = Long.MIN_VALUE;
+
+        static synchronized long lastEndNanos() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : COLLECTORS) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            if (count != lastCount) {
+                lastCount = count;
+                long endMillis = -1;
+                for (GarbageCollectorMXBean gc : COLLECTORS) {
+                    if (gc instanceof com.sun.management.GarbageCollectorMXBean) {
+                        GcInfo info = ((com.sun.management.GarbageCollectorMXBean) gc).getLastGcInfo();
+                        if (info != null) {
+                            endMillis = Math.max(endMillis, info.getEndTime());
+                        }
+                    }
+                }
+                lastEndNanos = (endMillis < 0) ? Long.MIN_VALUE : START_NANOS + endMillis * 1_000_000L;
+            }
+            return lastEndNanos;
+        }
+    }
+}
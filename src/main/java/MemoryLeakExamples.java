@@ -1,10 +1,19 @@
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class MemoryLeakExamples {
 
@@ -33,37 +42,234 @@ public class MemoryLeakExamples {
         }
     }
 
+    // Lifecycle callback for the demo types; built from plain values so that it cannot
+    // capture, and so keep alive, the object it reports on
+    static Runnable announceReclaimed(String description) {
+        return () -> System.out.println(description + " has been reclaimed");
+    }
+
     // 1. Static Collection Leak
     static class StaticMemoryLeaker {
-        private static final List<ExpensiveObject> staticList = new ArrayList<>();
+        private static volatile ObjectRegistry registry = new ListRegistry();
+        private static volatile IngestQueue<ExpensiveObject> ingest;
 
         public static void addData(ExpensiveObject data) {
-            staticList.add(data); // Objects never get removed!
+            while (true) {
+                IngestQueue<ExpensiveObject> queue = ingest;
+                if (queue == null) {
+                    registry.add(data); // Objects never get removed!
+                    return;
+                }
+                try {
+                    queue.offer(data);
+                    return;
+                } catch (IllegalStateException e) {
+                    if (!queue.isClosed()) {
+                        throw e;
+                    }
+                }
+                // Closed by stopIngestQueue; wait until it has delivered and let go
+                synchronized (StaticMemoryLeaker.class) {
+                    if (ingest == queue) {
+                        throw new IllegalStateException("Ingest queue closed outside stopIngestQueue");
+                    }
+                }
+            }
         }
 
+        // Entries still queued for ingestion are not counted until drained
         public static int getSize() {
-            return staticList.size();
+            return registry.size();
         }
 
-        // Fix method
+        // Fix method. With an ingest queue the registry is cleared on the drainer, after
+        // what was queued before the call, so it keeps a single writer.
         public static void clear() {
-            staticList.clear();
+            IngestQueue<ExpensiveObject> queue = ingest;
+            if (queue != null) {
+                queue.execute(() -> registry.clear());
+            } else {
+                registry.clear();
+            }
+        }
+
+        // Makes addData safe to call from many threads: producers enqueue without a lock
+        // and a single drainer moves entries into the registry in batches, so the
+        // registry only ever has one writer
+        static synchronized void useIngestQueue(int capacity, int batchSize) {
+            stopIngestQueue();
+            ingest = new IngestQueue<>(capacity, batchSize, batch -> registry.addAll(batch));
+        }
+
+        // Delivers what is still queued, then goes back to adding on the caller's thread.
+        // The queue is closed before it is dropped, so an addData racing this either
+        // gets in before the close or waits for it and adds directly; the registry never
+        // has the drainer and a caller writing at once.
+        static synchronized void stopIngestQueue() {
+            IngestQueue<ExpensiveObject> queue = ingest;
+            if (queue != null) {
+                queue.close();
+                ingest = null;
+            }
+        }
+
+        // Waits until every entry added before the call is in the registry
+        static void flush() {
+            IngestQueue<ExpensiveObject> queue = ingest;
+            if (queue != null) {
+                queue.flush();
+            }
+        }
+
+        // Replaces the backing registry, e.g. with a bounded RingBufferRegistry, a
+        // TimeWindowRegistry that ages entries out, or a SegmentedLogRegistry that spills
+        // to disk; the entries of the previous one are not carried over
+        static void useRegistry(ObjectRegistry replacement) {
+            registry = Objects.requireNonNull(replacement);
+        }
+
+        static ObjectRegistry registry() {
+            return registry;
+        }
+
+        // Safe alongside writers only if the registry is; the default list locks out the
+        // writer for the whole scan, an EpochRegistry lets reporting threads scan without
+        // locking it or copying it first
+        static void forEach(Consumer<? super ExpensiveObject> action) {
+            registry.forEach(action);
+        }
+
+        // The original registry: a static list that only ever grows. Synchronized so that
+        // getSize() and forEach() can run while the ingest drainer writes to it.
+        private static final class ListRegistry implements ObjectRegistry {
+            private final List<ExpensiveObject> staticList = new ArrayList<>();
+
+            @Override
+            public synchronized void add(ExpensiveObject object) {
+                staticList.add(object);
+            }
+
+            @Override
+            public synchronized void addAll(List<? extends ExpensiveObject> objects) {
+                staticList.addAll(objects);
+            }
+
+            @Override
+            public synchronized int size() {
+                return staticList.size();
+            }
+
+            @Override
+            public synchronized void clear() {
+                staticList.clear();
+            }
+
+            @Override
+            public synchronized void forEach(Consumer<? super ExpensiveObject> action) {
+                staticList.forEach(action);
+            }
         }
     }
 
     static class ExpensiveObject {
+        static final int DEFAULT_PAYLOAD_SIZE = 1024 * 1024; // 1MB object
+        // Object header + id + payload reference, with compressed oops
+        private static final int SHALLOW_SIZE = 24;
+
+        // Weighs cache entries by the bytes their ExpensiveObject retains
+        static final Weigher<Object, ExpensiveObject> WEIGHER =
+                (key, value) -> (int) Math.min(Integer.MAX_VALUE, value.getEstimatedSize());
+
         private final int id;
-        private final byte[] data;
+        private final Payload payload;
 
         public ExpensiveObject(int id) {
+            this(id, DEFAULT_PAYLOAD_SIZE);
+        }
+
+        // The payload array is only allocated once the payload is written or viewed
+        public ExpensiveObject(int id, int payloadSize) {
+            this(id, new LazyPayload(payloadSize));
+        }
+
+        // Takes the payload from buffer, e.g. a memory-mapped snapshot, sharing the bytes
+        // with any live payload of equal content
+        ExpensiveObject(int id, ByteBuffer payload) {
+            this(id, DedupPayloadStore.shared().intern(payload));
+        }
+
+        ExpensiveObject(int id, Payload payload) {
+            this(id, payload, true);
+        }
+
+        private ExpensiveObject(int id, Payload payload, boolean tracked) {
             this.id = id;
-            this.data = new byte[1024 * 1024]; // 1MB object
+            this.payload = payload;
+            if (tracked) {
+                Lifecycle.register(this, announceReclaimed("ExpensiveObject " + id));
+            }
+        }
+
+        // Not registered with Lifecycle, so reclaiming it prints and counts nothing; for
+        // benchmarks and short-lived copies whose collection is not worth reporting
+        static ExpensiveObject untracked(int id, Payload payload) {
+            return new ExpensiveObject(id, payload, false);
+        }
+
+        // Keeps the payload in direct memory; release() frees it without waiting for GC
+        public static ExpensiveObject offHeap(int id, int payloadSize) {
+            return new ExpensiveObject(id, new OffHeapPayload(payloadSize));
+        }
+
+        // Borrows the payload from the shared BufferPool; release() returns it for reuse
+        public static ExpensiveObject pooled(int id, int payloadSize) {
+            return new ExpensiveObject(id, new PooledPayload(BufferPool.shared(), payloadSize));
         }
 
         public int getId() {
             return id;
         }
 
+        Payload getPayload() {
+            return payload;
+        }
+
+        public int getPayloadSize() {
+            return payload.size();
+        }
+
+        // Read-only view of the payload, without copying it if it is contiguous
+        ByteBuffer payloadView() {
+            return payload.readOnlyView();
+        }
+
+        // Read-only views covering the payload in order, never copying
+        ByteBuffer[] payloadSegments() {
+            return payload.readOnlySegments();
+        }
+
+        // Shallow size plus payload, on and off the heap
+        public long getEstimatedSize() {
+            return SHALLOW_SIZE + payload.footprint();
+        }
+
+        // Payload in 64KB pages, which G1 never allocates as humongous objects
+        public static ExpensiveObject chunked(int id, int payloadSize) {
+            return new ExpensiveObject(id, new ChunkedPayload(payloadSize));
+        }
+
+        // Zero-filled payload shared with every other deduplicated payload of that size
+        // until it is written to
+        public static ExpensiveObject deduplicated(int id, int payloadSize) {
+            return new ExpensiveObject(id, DedupPayloadStore.shared().zeros(payloadSize));
+        }
+
+        // Frees an off-heap payload now or returns a pooled one to its pool; the object
+        // must not be used afterwards
+        public void release() {
+            payload.release();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -76,12 +282,6 @@ public class MemoryLeakExamples {
         public int hashCode() {
             return Objects.hash(id);
         }
-
-        @Override
-        protected void finalize() throws Throwable {
-            System.out.println("ExpensiveObject " + id + " is being finalized");
-            super.finalize();
-        }
     }
 
     public static void staticCollectionLeak() {
@@ -94,8 +294,11 @@ public class MemoryLeakExamples {
                     StaticMemoryLeaker.getSize());
         }
 
+        System.out.println(LazyPayload.summary());
         System.out.println("Objects remain in memory even after method ends!");
-        // Fix: Call StaticMemoryLeaker.clear() when done
+        // Fix: Call StaticMemoryLeaker.clear() when done, or bound what it keeps with
+        // StaticMemoryLeaker.useRegistry(new RingBufferRegistry(capacity)), or keep it all
+        // off the heap with StaticMemoryLeaker.useRegistry(new SegmentedLogRegistry(dir, 64MB))
     }
 
     // 2. Listener/Observer Pattern Leak
@@ -126,22 +329,22 @@ public class MemoryLeakExamples {
     }
 
     static class LeakyComponent implements EventListener {
-        private final byte[] heavyResource = new byte[1024 * 1024]; // 1MB
+        private final BufferPool.PooledBuffer heavyResource = BufferPool.shared().acquire(1024 * 1024); // 1MB
         private final int id;
 
         public LeakyComponent(int id) {
             this.id = id;
+            Lifecycle.register(this, announceReclaimed("LeakyComponent " + id));
         }
 
-        @Override
-        public void onEvent(String event) {
-            System.out.println("LeakyComponent " + id + " received: " + event);
+        // Returns the heavy resource to the pool once the component is unregistered
+        public void release() {
+            heavyResource.release();
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            System.out.println("LeakyComponent " + id + " is being finalized");
-            super.finalize();
+        public void onEvent(String event) {
+            System.out.println("LeakyComponent " + id + " received: " + event);
         }
     }
 
@@ -170,7 +373,7 @@ public class MemoryLeakExamples {
         // Publisher still holds references to the components!
         publisher.publishEvent("Test event");
 
-        // Fix: Always call publisher.removeListener(component) before clearing
+        // Fix: Always call publisher.removeListener(component) and component.release() before clearing
     }
 
     // 3. Thread and Timer Leak
@@ -178,6 +381,10 @@ public class MemoryLeakExamples {
         private volatile boolean isRunning = true;
         private Thread backgroundThread;
 
+        public ThreadLeakExample() {
+            Lifecycle.register(this, announceReclaimed("ThreadLeakExample"));
+        }
+
         public void startBackgroundWork() {
             backgroundThread = new Thread(() -> {
                 while (isRunning) {
@@ -201,12 +408,6 @@ public class MemoryLeakExamples {
                 backgroundThread.interrupt();
             }
         }
-
-        @Override
-        protected void finalize() throws Throwable {
-            System.out.println("ThreadLeakExample is being finalized");
-            super.finalize();
-        }
     }
 
     public static void threadLeak() {
@@ -235,11 +436,16 @@ public class MemoryLeakExamples {
 
     // 4. Anonymous Inner Class Leak (holds reference to outer class)
     static class OuterClass {
-        private byte[] heavyData = new byte[1024 * 1024]; // 1MB
+        private final BufferPool.PooledBuffer heavyData = BufferPool.shared().acquire(1024 * 1024); // 1MB
         private final int id;
 
         public OuterClass(int id) {
             this.id = id;
+            Lifecycle.register(this, announceReclaimed("OuterClass " + id));
+        }
+
+        public void release() {
+            heavyData.release();
         }
 
         public Runnable createAnonymousRunnable() {
@@ -258,12 +464,6 @@ public class MemoryLeakExamples {
                 // Lambda also captures 'this' reference when using instance fields!
             };
         }
-
-        @Override
-        protected void finalize() throws Throwable {
-            System.out.println("OuterClass " + id + " is being finalized");
-            super.finalize();
-        }
     }
 
     public static void anonymousInnerClassLeak() {
@@ -287,23 +487,141 @@ public class MemoryLeakExamples {
         for (Runnable r : runnables) {
             r.run();
         }
+        System.out.println(Lifecycle.report());
 
         // Fix: Use static inner classes or store only needed data
     }
 
     // 5. Cache without Eviction Policy
+    // Fixed: backed by a window TinyLFU cache so retained payload bytes stay under a budget.
+    // BoundedCache is concurrent, so one instance can be shared by request threads.
     static class NaiveCacheExample {
-        private final Map<String, ExpensiveObject> cache = new HashMap<>();
+        private static final long DEFAULT_MAXIMUM_WEIGHT = 64L * 1024 * 1024; // 64MB
+
+        private final BoundedCache<String, ExpensiveObject> cache;
+        // Builds the object for a key's hash code on a miss
+        private final IntFunction<ExpensiveObject> objects;
+
+        public NaiveCacheExample() {
+            this(DEFAULT_MAXIMUM_WEIGHT);
+        }
+
+        public NaiveCacheExample(long maximumWeightBytes) {
+            this(newBuilder(maximumWeightBytes));
+        }
+
+        // Hot entries are rebuilt in the background once older than refreshAfterWrite
+        public NaiveCacheExample(long maximumWeightBytes, Duration refreshAfterWrite) {
+            this(newBuilder(maximumWeightBytes).refreshAfterWrite(refreshAfterWrite));
+        }
+
+        NaiveCacheExample(BoundedCache.Builder<String, ExpensiveObject> builder) {
+            this(builder, ExpensiveObject::new);
+        }
+
+        NaiveCacheExample(BoundedCache.Builder<String, ExpensiveObject> builder,
+                IntFunction<ExpensiveObject> objects) {
+            this.cache = builder.build();
+            this.objects = objects;
+        }
+
+        // Payloads of entries left untouched for the tier's idle time are kept compressed
+        public static NaiveCacheExample withColdCompression(long maximumWeightBytes, CompressedColdTier tier) {
+            return new NaiveCacheExample(newBuilder(maximumWeightBytes),
+                    id -> new ExpensiveObject(id, tier.newPayload(ExpensiveObject.DEFAULT_PAYLOAD_SIZE)));
+        }
+
+        // Entries also expire a fixed time after creation and after their last read
+        public static NaiveCacheExample expiring(long maximumWeightBytes,
+                Duration expireAfterWrite, Duration expireAfterAccess) {
+            return new NaiveCacheExample(newBuilder(maximumWeightBytes)
+                    .expireAfterWrite(expireAfterWrite)
+                    .expireAfterAccess(expireAfterAccess));
+        }
+
+        static BoundedCache.Builder<String, ExpensiveObject> newBuilder(long maximumWeightBytes) {
+            return BoundedCache.<String, ExpensiveObject>newBuilder()
+                    .maximumWeight(maximumWeightBytes)
+                    .weigher(ExpensiveObject.WEIGHER);
+        }
 
         public ExpensiveObject get(String key) {
-            return cache.computeIfAbsent(key, k -> {
-                System.out.println("Creating expensive object for key: " + k);
-                return new ExpensiveObject(k.hashCode());
-            });
+            return cache.get(key, this::load);
+        }
+
+        // Misses are built on the cache's executor instead of the calling thread
+        public CompletableFuture<ExpensiveObject> getAsync(String key) {
+            return cache.getAsync(key, this::load);
+        }
+
+        // Writes every live entry to a checksummed snapshot file; returns the entry count
+        public long saveSnapshot(Path file) throws IOException {
+            return CacheSnapshot.write(file, cache::forEach);
+        }
+
+        // Adds the entries of a snapshot written by saveSnapshot, one at a time as they
+        // are read; returns the entry count
+        public long loadSnapshot(Path file) throws IOException {
+            return CacheSnapshot.read(file, cache::put);
+        }
+
+        // Starts warm from the snapshot if one exists and saves a new one at JVM shutdown
+        public static NaiveCacheExample persistent(long maximumWeightBytes, Path snapshot) throws IOException {
+            NaiveCacheExample cache = new NaiveCacheExample(maximumWeightBytes);
+            if (Files.exists(snapshot)) {
+                long loaded = cache.loadSnapshot(snapshot);
+                System.out.println("Loaded " + loaded + " cached objects from " + snapshot + ", "
+                        + DedupPayloadStore.shared().bytesSaved() + " bytes saved by deduplication");
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.saveSnapshot(snapshot);
+                } catch (IOException e) {
+                    System.err.println("Could not save cache snapshot: " + e.getMessage());
+                }
+            }, "cache-snapshot"));
+            return cache;
+        }
+
+        // Resolves many keys at once; all misses are built by a single loadAll call
+        public Map<String, ExpensiveObject> getAll(Collection<String> keys) {
+            return cache.getAll(keys, this::loadAll);
+        }
+
+        private ExpensiveObject load(String key) {
+            System.out.println("Creating expensive object for key: " + key);
+            return objects.apply(key.hashCode());
+        }
+
+        private Map<String, ExpensiveObject> loadAll(Set<String> keys) {
+            System.out.println("Creating " + keys.size() + " expensive objects in one batch");
+            Map<String, ExpensiveObject> loaded = new HashMap<>(keys.size() * 2);
+            for (String key : keys) {
+                loaded.put(key, objects.apply(key.hashCode()));
+            }
+            return loaded;
         }
 
         public int getCacheSize() {
-            return cache.size();
+            return (int) cache.size();
+        }
+
+        // Estimated bytes retained by cached objects
+        public long getCacheWeight() {
+            return cache.weightedSize();
+        }
+
+        public long getEvictionCount() {
+            return cache.evictionCount();
+        }
+
+        // Misses that reused another thread's in-flight ExpensiveObject instead of allocating one
+        public long getCoalescedLoadCount() {
+            return cache.coalescedLoadCount();
+        }
+
+        public CacheStats getStats() {
+            return cache.stats();
         }
 
         public void clear() {
@@ -314,19 +632,28 @@ public class MemoryLeakExamples {
     public static void cacheWithoutEvictionLeak() {
         System.out.println("\n5. Cache without Eviction Leak Example");
         NaiveCacheExample cache = new NaiveCacheExample();
-
-        // Simulate accessing many different keys
-        for (int i = 0; i < 100; i++) {
-            cache.get("key_" + i);
-            if (i % 20 == 0) {
-                System.out.println("Cache size: " + cache.getCacheSize());
+        // Watch hit rate and evictions live in JConsole/VisualVM under MemoryLeakExamples
+        CacheStatsMBeans.register("NaiveCacheExample", cache, NaiveCacheExample::getStats);
+        try {
+            // Simulate accessing many different keys
+            for (int i = 0; i < 100; i++) {
+                cache.get("key_" + i);
+                if (i % 20 == 0) {
+                    System.out.println("Cache size: " + cache.getCacheSize() +
+                            ", weight: " + cache.getCacheWeight() + " bytes");
+                }
             }
-        }
 
-        System.out.println("Final cache size: " + cache.getCacheSize());
-        System.out.println("All objects remain in cache forever!");
+            System.out.println("Final cache size: " + cache.getCacheSize() +
+                    ", weight: " + cache.getCacheWeight() + " bytes");
+            System.out.println("Evicted " + cache.getEvictionCount() + " objects to stay within the bound");
+            System.out.println(cache.getStats());
+            System.out.println(LazyPayload.summary());
+        } finally {
+            CacheStatsMBeans.unregister("NaiveCacheExample");
+        }
 
-        // Fix: Implement LRU cache, use WeakHashMap, or add manual cleanup
+        // Fix: Bounded W-TinyLFU cache instead of an unbounded HashMap
     }
 
     // 6. Unclosed Resources Leak
@@ -390,6 +717,8 @@ public class MemoryLeakExamples {
 
         public BadHashCodeObject(int value) {
             this.value = value;
+            // The callback cannot see the object, so it reports the value it started with
+            Lifecycle.register(this, announceReclaimed("BadHashCodeObject created with value " + value));
         }
 
         public void setValue(int value) {
@@ -412,12 +741,6 @@ public class MemoryLeakExamples {
         public int hashCode() {
             return Objects.hash(value);
         }
-
-        @Override
-        protected void finalize() throws Throwable {
-            System.out.println("BadHashCodeObject with value " + value + " is being finalized");
-            super.finalize();
-        }
     }
 
     public static void hashCodeEqualsLeak() {
@@ -530,33 +853,196 @@ public class MemoryLeakExamples {
     }
 
     // 10. WeakReference Example (Prevention)
+    // Cleared references are enqueued by the GC and removed on the next read or write,
+    // so stale entries never pile up and cleanup costs O(cleared), not O(size).
     static class WeakReferenceExample {
-        private final Map<String, WeakReference<ExpensiveObject>> cache = new HashMap<>();
+        private static final long DEFAULT_MAXIMUM_WEIGHT = 64L * 1024 * 1024; // 64MB
+
+        // Access-ordered so the least recently used entries are evicted first; guarded by itself
+        private final Map<String, KeyedWeakReference> cache = new LinkedHashMap<>(16, 0.75f, true);
+        private final ReferenceQueue<ExpensiveObject> clearedReferences = new ReferenceQueue<>();
+        private final SingleFlight<String, ExpensiveObject> loads = new SingleFlight<>();
+        private final StatsCounter stats = new StatsCounter();
+        private final long maximumWeight;
+        private long weightedSize;
+
+        public WeakReferenceExample() {
+            this(DEFAULT_MAXIMUM_WEIGHT);
+        }
+
+        public WeakReferenceExample(long maximumWeightBytes) {
+            this.maximumWeight = maximumWeightBytes;
+        }
 
         public ExpensiveObject get(String key) {
-            WeakReference<ExpensiveObject> ref = cache.get(key);
-            ExpensiveObject obj = (ref != null) ? ref.get() : null;
+            ExpensiveObject obj = lookup(key);
 
             if (obj == null) {
-                obj = new ExpensiveObject(key.hashCode());
-                cache.put(key, new WeakReference<>(obj));
-                System.out.println("Created new object for key: " + key);
+                stats.recordMisses(1);
+                // Concurrent misses on the same key share a single new ExpensiveObject
+                obj = loads.load(key, k -> {
+                    ExpensiveObject loaded = lookup(k);
+                    if (loaded == null) {
+                        long start = System.nanoTime();
+                        loaded = new ExpensiveObject(k.hashCode());
+                        stats.recordLoadSuccess(System.nanoTime() - start);
+                        store(k, loaded);
+                        System.out.println("Created new object for key: " + k);
+                    }
+                    return loaded;
+                });
             } else {
+                stats.recordHits(1);
                 System.out.println("Retrieved cached object for key: " + key);
             }
 
             return obj;
         }
 
+        // Removes entries whose referents have been collected; also done on every get
         public void cleanup() {
-            cache.entrySet().removeIf(entry -> entry.getValue().get() == null);
+            synchronized (cache) {
+                drainClearedReferences();
+            }
+        }
+
+        public int getCacheSize() {
+            synchronized (cache) {
+                drainClearedReferences();
+                return cache.size();
+            }
+        }
+
+        public long getCacheWeight() {
+            synchronized (cache) {
+                drainClearedReferences();
+                return weightedSize;
+            }
+        }
+
+        public long getCoalescedLoadCount() {
+            return loads.coalescedCount();
+        }
+
+        public CacheStats getStats() {
+            synchronized (cache) {
+                drainClearedReferences();
+                return stats.snapshot(cache.size(), weightedSize);
+            }
+        }
+
+        private ExpensiveObject lookup(String key) {
+            synchronized (cache) {
+                drainClearedReferences();
+                KeyedWeakReference ref = cache.get(key);
+                return (ref != null) ? ref.get() : null;
+            }
+        }
+
+        private void store(String key, ExpensiveObject obj) {
+            synchronized (cache) {
+                drainClearedReferences();
+                KeyedWeakReference ref = new KeyedWeakReference(
+                        key, obj, ExpensiveObject.WEIGHER.weigh(key, obj), clearedReferences);
+                KeyedWeakReference previous = cache.put(key, ref);
+                if (previous != null) {
+                    weightedSize -= previous.weight;
+                }
+                weightedSize += ref.weight;
+                evict();
+            }
+        }
+
+        private void evict() {
+            Iterator<KeyedWeakReference> it = cache.values().iterator();
+            while (weightedSize > maximumWeight && it.hasNext()) {
+                KeyedWeakReference eldest = it.next();
+                it.remove();
+                weightedSize -= eldest.weight;
+                stats.recordEviction(RemovalCause.SIZE, eldest.weight);
+            }
+        }
+
+        // Guarded by cache. A reference that was already evicted or replaced is skipped,
+        // since its weight was released when it left the map.
+        private void drainClearedReferences() {
+            Reference<? extends ExpensiveObject> cleared;
+            while ((cleared = clearedReferences.poll()) != null) {
+                KeyedWeakReference ref = (KeyedWeakReference) cleared;
+                if (cache.remove(ref.key, ref)) {
+                    weightedSize -= ref.weight;
+                    stats.recordEviction(RemovalCause.COLLECTED, ref.weight);
+                }
+            }
+        }
+
+        // Carries the key and weight so the entry can be found and released once the
+        // referent is cleared and the reference is enqueued
+        static final class KeyedWeakReference extends WeakReference<ExpensiveObject> {
+            final String key;
+            final int weight;
+
+            KeyedWeakReference(String key, ExpensiveObject referent, int weight,
+                    ReferenceQueue<ExpensiveObject> queue) {
+                super(referent, queue);
+                this.key = key;
+                this.weight = weight;
+            }
+        }
+    }
+
+    // 11. Soft-reference overflow tier (Prevention)
+    // Recently used objects are held strongly; older ones fall back to SoftReferences
+    // whose budget shrinks as the old generation fills up.
+    static class SoftTieredCacheExample {
+        private static final long DEFAULT_HOT_WEIGHT = 16L * 1024 * 1024; // 16MB
+        private static final long DEFAULT_SOFT_WEIGHT = 256L * 1024 * 1024; // 256MB
+
+        private final SoftTierCache<String, ExpensiveObject> cache;
+
+        public SoftTieredCacheExample() {
+            this(DEFAULT_HOT_WEIGHT, DEFAULT_SOFT_WEIGHT);
+        }
+
+        public SoftTieredCacheExample(long hotMaximumBytes, long softMaximumBytes) {
+            this.cache = new SoftTierCache<>(hotMaximumBytes, softMaximumBytes, ExpensiveObject.WEIGHER);
+        }
+
+        public ExpensiveObject get(String key) {
+            return cache.get(key, k -> new ExpensiveObject(k.hashCode()));
         }
 
         public int getCacheSize() {
-            return cache.size();
+            return cache.hotSize() + cache.softSize();
+        }
+
+        public long getCacheWeight() {
+            return cache.hotWeight() + cache.softWeight();
+        }
+
+        public void printStats() {
+            System.out.println("Hot tier: " + cache.hotSize() + " objects, " + cache.hotWeight() + " bytes");
+            System.out.println("Soft tier: " + cache.softSize() + " objects, " + cache.softWeight() +
+                    " bytes (budget " + cache.effectiveSoftMaximumWeight() + " bytes)");
+            System.out.println("Hits hot/soft: " + cache.hotHitCount() + "/" + cache.softHitCount() +
+                    ", misses: " + cache.missCount() + ", soft evictions: " + cache.softEvictionCount());
         }
     }
 
+    public static void softTieredCacheExample() {
+        System.out.println("\n11. Soft-Reference Tiered Cache Example (Memory Leak Prevention)");
+        SoftTieredCacheExample cache = new SoftTieredCacheExample(4L * 1024 * 1024, 32L * 1024 * 1024);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 20; i++) {
+                cache.get("key_" + i);
+            }
+        }
+
+        cache.printStats();
+        System.out.println("Soft entries are dropped first when the old generation fills up!");
+    }
+
     public static void weakReferenceExample() {
         System.out.println("\n10. WeakReference Cache Example (Memory Leak Prevention)");
         WeakReferenceExample cache = new WeakReferenceExample();
@@ -572,9 +1058,9 @@ public class MemoryLeakExamples {
         System.gc();
         Thread.yield(); // Give GC a chance to run
 
-        // Check cache again
-        cache.cleanup(); // Remove dead references
-        System.out.println("Cache size after GC and cleanup: " + cache.getCacheSize());
+        // Check cache again; collected entries are drained from the reference queue
+        System.out.println("Cache size after GC: " + cache.getCacheSize());
+        System.out.println(cache.getStats());
 
         System.out.println("WeakReferences allow objects to be garbage collected!");
     }
@@ -0,0 +1,152 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleConsumer;
+import javax.management.NotificationEmitter;
+
+// Reports how full the old generation is, preferring the usage measured right after
+// the last collection (live data) over the current usage (which includes garbage not
+// yet collected). Readings are cached for a short interval so callers can ask on
+// every cache write without hitting the MXBean each time.
+//
+// Listeners are called with a fresh reading after every garbage collection, so
+// callers can react to pressure that builds up while they are idle. The JVM-wide GC
+// listener holds monitors only weakly; a monitor and its listeners are collected
+// together with whatever owns them.
+final class MemoryPressureMonitor {
+    private static final long SAMPLE_INTERVAL_NANOS = 100_000_000L; // 100ms
+
+    private final MemoryPoolMXBean oldGen;
+    private final Ticker ticker;
+    private final List<DoubleConsumer> listeners = new CopyOnWriteArrayList<>();
+    private volatile long lastSampleTime;
+    private volatile double lastUsage;
+
+    MemoryPressureMonitor() {
+        this(Ticker.system());
+    }
+
+    MemoryPressureMonitor(Ticker ticker) {
+        this.oldGen = findOldGen();
+        this.ticker = ticker;
+        this.lastSampleTime = ticker.read() - SAMPLE_INTERVAL_NANOS;
+    }
+
+    // Fraction of the old generation in use, between 0.0 and 1.0
+    public double oldGenUsage() {
+        long now = ticker.read();
+        if (now - lastSampleTime >= SAMPLE_INTERVAL_NANOS) {
+            lastUsage = sample();
+            lastSampleTime = now;
+        }
+        return lastUsage;
+    }
+
+    // Calls listener with the old-gen usage after every garbage collection, on the
+    // JVM's notification thread
+    public void addListener(DoubleConsumer listener) {
+        listeners.add(listener);
+        CollectionListener.register(this);
+    }
+
+    public void removeListener(DoubleConsumer listener) {
+        listeners.remove(listener);
+    }
+
+    public String poolName() {
+        return (oldGen == null) ? "heap" : oldGen.getName();
+    }
+
+    private double sample() {
+        MemoryUsage usage = null;
+        if (oldGen != null) {
+            usage = oldGen.getCollectionUsage();
+            if (usage == null || usage.getUsed() == 0) {
+                usage = oldGen.getUsage();
+            }
+        }
+        if (usage != null && usage.getMax() > 0) {
+            return (double) usage.getUsed() / usage.getMax();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+
+    private void afterCollection() {
+        double usage = sample();
+        lastUsage = usage;
+        lastSampleTime = ticker.read();
+        for (DoubleConsumer listener : listeners) {
+            listener.accept(usage);
+        }
+    }
+
+    // G1 "G1 Old Gen", Parallel "PS Old Gen", Serial "Tenured Gen", ZGC/Shenandoah single pool
+    private static MemoryPoolMXBean findOldGen() {
+        MemoryPoolMXBean largest = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isValid()) {
+                continue;
+            }
+            String name = pool.getName();
+            if (name.contains("Old") || name.contains("Tenured")) {
+                return pool;
+            }
+            if (largest == null || pool.getUsage().getMax() > largest.getUsage().getMax()) {
+                largest = pool;
+            }
+        }
+        return largest;
+    }
+
+    // One GC notification listener for the JVM, fanning out to the monitors still alive
+    private static final class CollectionListener {
+        private static final Queue<WeakReference<MemoryPressureMonitor>> MONITORS = new ConcurrentLinkedQueue<>();
+
+        static {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter) {
+                    ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                        if (notification.getType().equals(
+                                GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                            notifyMonitors();
+                        }
+                    }, null, null);
+                }
+            }
+        }
+
+        static void register(MemoryPressureMonitor monitor) {
+            for (WeakReference<MemoryPressureMonitor> ref : MONITORS) {
+                if (ref.get() == monitor) {
+                    return;
+                }
+            }
+            MONITORS.add(new WeakReference<>(monitor));
+        }
+
+        private static void notifyMonitors() {
+            for (Iterator<WeakReference<MemoryPressureMonitor>> it = MONITORS.iterator(); it.hasNext(); ) {
+                MemoryPressureMonitor monitor = it.next().get();
+                if (monitor == null) {
+                    it.remove();
+                } else {
+                    try {
+                        monitor.afterCollection();
+                    } catch (RuntimeException e) {
+                        System.err.println("Memory pressure listener failed: " + e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.List;
+import java.util.function.Consumer;
+
+// Where StaticMemoryLeaker keeps what addData is given. The default is the original
+// ever-growing list; other implementations bound, spill or age out what they hold.
+interface ObjectRegistry {
+
+    void add(MemoryLeakExamples.ExpensiveObject object);
+
+    // Called with each batch an IngestQueue drains
+    default void addAll(List<? extends MemoryLeakExamples.ExpensiveObject> objects) {
+        for (MemoryLeakExamples.ExpensiveObject object : objects) {
+            add(object);
+        }
+    }
+
+    int size();
+
+    void clear();
+
+    // Visits the entries held, oldest first
+    void forEach(Consumer<? super MemoryLeakExamples.ExpensiveObject> action);
+}
@@ -0,0 +1,160 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Payload kept in direct memory (ByteBuffer.allocateDirect), outside the Java heap:
+// the GC neither copies nor marks the bytes, and a large payload is never a humongous
+// allocation. Only a small wrapper lives on the heap.
+//
+// release() frees the memory right away through sun.misc.Unsafe.invokeCleaner when
+// the jdk.unsupported module is present; otherwise the buffer is dropped and its
+// memory returns when the GC collects it. A payload that becomes unreachable without
+// having been released only drops its buffer, via the shared Lifecycle Cleaner: a
+// view from readOnlyView() may still be in use, so the buffer's own Cleaner frees the
+// memory once the last view is gone too. Any access after release() throws
+// IllegalStateException, but release() must not race with reads or writes, and views
+// from readOnlyView() must not be used after it.
+final class OffHeapPayload implements Payload {
+    // This wrapper, its Deallocator and lifecycle registration, plus the DirectByteBuffer
+    // with its own Cleaner and Deallocator, with compressed oops
+    private static final int SHALLOW_SIZE = 200;
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private static final AtomicLong reservedBytes = new AtomicLong();
+    private static final LongAdder explicitReleases = new LongAdder();
+    private static final LongAdder cleanerReleases = new LongAdder();
+
+    private final Deallocator deallocator;
+    private final Lifecycle.Registration registration;
+    private final int size;
+
+    OffHeapPayload(int size) {
+        this.size = size;
+        this.deallocator = new Deallocator(ByteBuffer.allocateDirect(size));
+        this.registration = Lifecycle.register(this, deallocator);
+        reservedBytes.addAndGet(size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        return buffer().get(index);
+    }
+
+    @Override
+    public void put(int index, byte value) {
+        buffer().put(index, value);
+    }
+
+    @Override
+    public void get(int offset, byte[] dst, int dstOffset, int length) {
+        buffer().get(offset, dst, dstOffset, length);
+    }
+
+    @Override
+    public void put(int offset, byte[] src, int srcOffset, int length) {
+        buffer().put(offset, src, srcOffset, length);
+    }
+
+    @Override
+    public ByteBuffer readOnlyView() {
+        return buffer().asReadOnlyBuffer();
+    }
+
+    @Override
+    public long footprint() {
+        return SHALLOW_SIZE + size;
+    }
+
+    @Override
+    public void release() {
+        if (deallocator.buffer != null) {
+            deallocator.explicit = true;
+            registration.close();
+        }
+    }
+
+    public boolean isReleased() {
+        return deallocator.buffer == null;
+    }
+
+    // Direct memory held by payloads that are neither released nor collected
+    static long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    static long explicitReleaseCount() {
+        return explicitReleases.sum();
+    }
+
+    // Payloads dropped by the Cleaner because nobody released them; their memory
+    // returns once the buffer and every view of it have been collected
+    static long cleanerReleaseCount() {
+        return cleanerReleases.sum();
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer buffer = deallocator.buffer;
+        if (buffer == null) {
+            throw new IllegalStateException("Payload has been released");
+        }
+        return buffer;
+    }
+
+    // Must not refer to the OffHeapPayload, or it would never become unreachable
+    private static final class Deallocator implements Runnable {
+        volatile ByteBuffer buffer;
+        volatile boolean explicit;
+
+        Deallocator(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // Lifecycle runs this at most once. Only an explicit release frees the memory
+        // here; on the Cleaner path views of the buffer can outlive the payload.
+        @Override
+        public void run() {
+            ByteBuffer released = buffer;
+            buffer = null;
+            reservedBytes.addAndGet(-released.capacity());
+            if (explicit) {
+                explicitReleases.increment();
+                free(released);
+            } else {
+                cleanerReleases.increment();
+            }
+        }
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to free direct buffer", e);
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// GC pause time and heap occupancy with a live set of ExpensiveObjects whose payloads
+// are on the heap versus in direct memory. Each mode allocates the live set, then
+// churns short-lived garbage while it is retained, so the collector has to work
+// around it. Pauses are the collection counts and accumulated times reported by the
+// GarbageCollectorMXBeans over that phase (the explicit System.gc() calls used to
+// measure occupancy are excluded). Occupancy is heap used after a full GC, next to the
+// direct memory in use.
+//
+// With the default 1MB payloads every on-heap payload is a humongous G1 allocation.
+// Run: java -Xmx12g -XX:MaxDirectMemorySize=12g OffHeapPayloadBenchmark [objects] [payloadBytes] [heap|offheap|both]
+public class OffHeapPayloadBenchmark {
+    private static final int CHURN_ALLOCATION_SIZE = 4 * 1024;
+    private static final long CHURN_BYTES = 4L * 1024 * 1024 * 1024;
+
+    public static void main(String[] args) {
+        int objects = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int payloadSize = (args.length > 1)
+                ? Integer.parseInt(args[1]) : MemoryLeakExamples.ExpensiveObject.DEFAULT_PAYLOAD_SIZE;
+        String mode = (args.length > 2) ? args[2] : "both";
+
+        System.out.printf("%d objects x %d bytes, collectors %s%n", objects, payloadSize, collectorNames());
+        System.out.printf("%-9s %10s %8s %12s %12s %12s%n",
+                "payload", "alloc ms", "GCs", "GC time ms", "heap MB", "direct MB");
+        if (!mode.equals("offheap")) {
+            run("heap", objects, id -> new MemoryLeakExamples.ExpensiveObject(id, payloadSize));
+        }
+        if (!mode.equals("heap")) {
+            run("off-heap", objects, id -> MemoryLeakExamples.ExpensiveObject.offHeap(id, payloadSize));
+        }
+    }
+
+    private static void run(String label, int objects, IntFunction<MemoryLeakExamples.ExpensiveObject> factory) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long[] before = gcTotals();
+
+        long start = System.nanoTime();
+        MemoryLeakExamples.ExpensiveObject[] live = new MemoryLeakExamples.ExpensiveObject[objects];
+        for (int i = 0; i < objects; i++) {
+            live[i] = factory.apply(i);
+            live[i].getPayload().put(0, (byte) i);
+        }
+        long allocNanos = System.nanoTime() - start;
+        long checksum = churn();
+
+        long[] after = gcTotals();
+        System.gc();
+        long heapUsed = memory.getHeapMemoryUsage().getUsed();
+        long directUsed = directMemoryUsed();
+
+        for (MemoryLeakExamples.ExpensiveObject object : live) {
+            checksum += object.getPayload().get(0);
+            object.release();
+        }
+        System.out.printf("%-9s %10.1f %8d %12d %12.1f %12.1f   (checksum %d)%n", label,
+                allocNanos / 1e6, after[0] - before[0], after[1] - before[1],
+                heapUsed / 1048576.0, directUsed / 1048576.0, checksum);
+    }
+
+    // Short-lived allocations; returns a value so the JIT cannot drop them
+    private static long churn() {
+        long sum = 0;
+        for (long allocated = 0; allocated < CHURN_BYTES; allocated += CHURN_ALLOCATION_SIZE) {
+            byte[] garbage = new byte[CHURN_ALLOCATION_SIZE];
+            garbage[(int) (allocated & (CHURN_ALLOCATION_SIZE - 1))] = 1;
+            sum += garbage[0];
+        }
+        return sum;
+    }
+
+    // {collections, accumulated time in ms} summed over all collectors
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+
+    private static String collectorNames() {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        StringBuilder names = new StringBuilder();
+        for (GarbageCollectorMXBean gc : collectors) {
+            names.append(names.length() == 0 ? "" : ", ").append(gc.getName());
+        }
+        return names.toString();
+    }
+}
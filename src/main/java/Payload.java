@@ -0,0 +1,48 @@
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+// The bytes an ExpensiveObject carries. Implementations decide where the bytes live
+// (a heap array, direct memory, ...); callers only see a fixed-size, zero-initialized
+// byte sequence. Not thread-safe for concurrent writes.
+interface Payload {
+
+    int size();
+
+    byte get(int index);
+
+    void put(int index, byte value);
+
+    // Copies length bytes starting at offset into dst
+    default void get(int offset, byte[] dst, int dstOffset, int length) {
+        Objects.checkFromIndexSize(offset, length, size());
+        Objects.checkFromIndexSize(dstOffset, length, dst.length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = get(offset + i);
+        }
+    }
+
+    // Copies length bytes from src into the payload starting at offset
+    default void put(int offset, byte[] src, int srcOffset, int length) {
+        Objects.checkFromIndexSize(offset, length, size());
+        Objects.checkFromIndexSize(srcOffset, length, src.length);
+        for (int i = 0; i < length; i++) {
+            put(offset + i, src[srcOffset + i]);
+        }
+    }
+
+    // Read-only view of the bytes as one buffer; contiguous layouts do not copy, others
+    // return a fresh copy (see ChunkedPayload). Invalid once released.
+    ByteBuffer readOnlyView();
+
+    // Read-only views that cover the bytes in order, without copying
+    default ByteBuffer[] readOnlySegments() {
+        return new ByteBuffer[] {readOnlyView()};
+    }
+
+    // Bytes of memory retained by this payload, on and off the heap
+    long footprint();
+
+    // Frees the storage early where that is possible; idempotent
+    default void release() {
+    }
+}
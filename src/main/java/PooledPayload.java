@@ -0,0 +1,66 @@
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+// Payload in a byte[] borrowed from a BufferPool; release() hands the array back for
+// reuse, and a payload dropped without release() is reported as a leak by the pool.
+final class PooledPayload implements Payload {
+    // This object, the PooledBuffer and its leak tracking, plus the byte[] header
+    private static final int SHALLOW_SIZE = 144;
+
+    private final BufferPool.PooledBuffer buffer;
+
+    PooledPayload(BufferPool pool, int size) {
+        this.buffer = pool.acquire(size);
+    }
+
+    @Override
+    public int size() {
+        return buffer.length();
+    }
+
+    @Override
+    public byte get(int index) {
+        return buffer.array()[checkIndex(index)];
+    }
+
+    @Override
+    public void put(int index, byte value) {
+        buffer.array()[checkIndex(index)] = value;
+    }
+
+    @Override
+    public void get(int offset, byte[] dst, int dstOffset, int length) {
+        Objects.checkFromIndexSize(offset, length, buffer.length());
+        System.arraycopy(buffer.array(), offset, dst, dstOffset, length);
+    }
+
+    @Override
+    public void put(int offset, byte[] src, int srcOffset, int length) {
+        Objects.checkFromIndexSize(offset, length, buffer.length());
+        System.arraycopy(src, srcOffset, buffer.array(), offset, length);
+    }
+
+    @Override
+    public ByteBuffer readOnlyView() {
+        return ByteBuffer.wrap(buffer.array(), 0, buffer.length()).slice().asReadOnlyBuffer();
+    }
+
+    // The whole size-class array is retained, not just size() bytes
+    @Override
+    public long footprint() {
+        return SHALLOW_SIZE + buffer.capacity();
+    }
+
+    @Override
+    public void release() {
+        buffer.release();
+    }
+
+    // The array may be longer than the payload
+    private int checkIndex(int index) {
+        if (index >= buffer.length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + buffer.length());
+        }
+        return index;
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Striped, lossy ring buffers that record cache reads without taking a lock. Each
+// thread hashes to a stripe and claims a slot with a single CAS; when a stripe is
+// full or contended the read is simply dropped, which only costs the eviction
+// policy a little accuracy. A single drainer (holding the cache's eviction lock)
+// replays the buffered reads against the policy.
+final class ReadBuffer<E> {
+    static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    enum Status { SUCCESS, FULL, FAILED }
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4);
+        stripes = (Stripe<E>[]) new Stripe<?>[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripeMask = count - 1;
+    }
+
+    // Returns FULL when the stripe should be drained by the caller
+    Status offer(E e) {
+        return stripes[probe() & stripeMask].offer(e);
+    }
+
+    // Must only be called by one thread at a time
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().threadId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe<E> {
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        Status offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long size = tail - head;
+            if (size >= STRIPE_SIZE) {
+                return Status.FULL;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & STRIPE_MASK), e);
+                return (size + 1 >= STRIPE_SIZE) ? Status.FULL : Status.SUCCESS;
+            }
+            return Status.FAILED;
+        }
+
+        void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            while (head < tail) {
+                int index = (int) (head & STRIPE_MASK);
+                E e = buffer.get(index);
+                if (e == null) {
+                    // Slot claimed but not yet published; pick it up next drain
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            readCounter = head;
+        }
+    }
+}
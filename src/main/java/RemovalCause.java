@@ -0,0 +1,9 @@
+// Why an entry left a cache without being explicitly invalidated.
+enum RemovalCause {
+    // Evicted by the size or weight bound
+    SIZE,
+    // Expired by expireAfterWrite or expireAfterAccess
+    EXPIRED,
+    // Value was garbage collected (weak or soft references)
+    COLLECTED
+}
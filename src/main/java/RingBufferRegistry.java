@@ -0,0 +1,119 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Fixed-capacity registry that keeps the newest entries and overwrites the oldest.
+// add() is O(1) and lock-free for any number of producers: each one claims a
+// sequence number with a single getAndIncrement and installs its entry in that
+// sequence's slot with a CAS, so producers never wait for one another. Every slot
+// remembers the sequence of the entry it holds, and a producer that was lapped
+// before it got to install finds a newer sequence there and gives up instead of
+// overwriting it; its entry counts as overwritten, as it would have been anyway.
+// Each add allocates one small stamped cell.
+//
+// Counts entries overwritten by newer ones and entries dropped by clear(), which
+// together are the history this registry has given up.
+final class RingBufferRegistry implements ObjectRegistry {
+    private final AtomicReferenceArray<Cell> slots;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final LongAdder overwritten = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // capacity is rounded up to a power of two
+    RingBufferRegistry(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = 1 << -Integer.numberOfLeadingZeros(capacity - 1);
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = slots.length() - 1;
+    }
+
+    @Override
+    public void add(MemoryLeakExamples.ExpensiveObject object) {
+        long claimed = sequence.getAndIncrement();
+        int index = (int) (claimed & mask);
+        Cell cell = new Cell(claimed, object);
+        Cell previous;
+        do {
+            previous = slots.get(index);
+            if (previous != null && previous.sequence > claimed) {
+                // Lapped: a newer entry already owns the slot
+                overwritten.increment();
+                return;
+            }
+        } while (!slots.compareAndSet(index, previous, cell));
+        if (previous == null) {
+            occupied.incrementAndGet();
+        } else {
+            overwritten.increment();
+        }
+    }
+
+    @Override
+    public int size() {
+        return occupied.get();
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    // Every add since creation, including the ones since overwritten or cleared
+    public long addedCount() {
+        return sequence.get();
+    }
+
+    public long overwrittenCount() {
+        return overwritten.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.getAndSet(i, null) != null) {
+                occupied.decrementAndGet();
+                dropped.increment();
+            }
+        }
+    }
+
+    // Oldest first, by sequence. Weakly consistent: entries added or overwritten during
+    // the walk may be missed, and so may an entry whose replacement has claimed its
+    // slot but not installed yet
+    @Override
+    public void forEach(Consumer<? super MemoryLeakExamples.ExpensiveObject> action) {
+        long end = sequence.get();
+        long start = Math.max(0, end - slots.length());
+        for (long s = start; s < end; s++) {
+            Cell cell = slots.get((int) (s & mask));
+            if (cell != null && cell.sequence == s) {
+                action.accept(cell.object);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RingBufferRegistry{size=%d, capacity=%d, added=%d, overwritten=%d, dropped=%d}",
+                size(), capacity(), addedCount(), overwrittenCount(), droppedCount());
+    }
+
+    private static final class Cell {
+        final long sequence;
+        final MemoryLeakExamples.ExpensiveObject object;
+
+        Cell(long sequence, MemoryLeakExamples.ExpensiveObject object) {
+            this.sequence = sequence;
+            this.object = object;
+        }
+    }
+}
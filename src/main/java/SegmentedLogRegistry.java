@@ -0,0 +1,399 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Append-only registry that keeps every entry but only the newest segment on the
+// heap. Once the active segment reaches segmentBytes it is written, in insertion
+// order, to a file in the log directory and memory-mapped read-only; the OS page
+// cache then decides how much of the history stays in memory.
+//
+// Record layout (big-endian): id:int  payloadLength:int  payload:bytes
+//
+// Each file segment has a sparse index with one entry per block of 64 records: the
+// block's file position and the smallest and largest id in it. find(id) checks the
+// active segment, then the file segments newest first, scanning only the blocks whose
+// id range can hold the id; with ids that grow over time, as in the examples, that is
+// one block per segment. size() is a counter. Thread-safe.
+//
+// Segment files are named after the sequence number of their first record. Opening a
+// directory that already holds segments, e.g. after a restart, maps them again and
+// continues the sequence after the newest; a segment cut short by a crash keeps its
+// complete records and an empty one is deleted. No segment grows past 1GB, so
+// positions within a file fit in an int.
+final class SegmentedLogRegistry implements ObjectRegistry {
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        // payload is a read-only view, valid only during the call
+        void visit(int id, ByteBuffer payload);
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    // Guarded by this
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<MemoryLeakExamples.ExpensiveObject> active = new ArrayList<>();
+    private long activeBytes;
+    private long spilledBytes;
+    private long nextSequence;
+    private int size;
+
+    SegmentedLogRegistry(Path directory, long segmentBytes) throws IOException {
+        if (segmentBytes <= 0 || segmentBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must be between 1 and 1GB: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        recover();
+    }
+
+    // Rolling the active segment writes to disk; a failure surfaces as UncheckedIOException
+    // and the entry stays in the active segment, to be spilled by a later roll
+    @Override
+    public synchronized void add(MemoryLeakExamples.ExpensiveObject object) {
+        long recordBytes = RECORD_HEADER_SIZE + (long) object.getPayloadSize();
+        if (recordBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Payload larger than a segment: " + object.getPayloadSize());
+        }
+        if (!active.isEmpty() && activeBytes + recordBytes > MAX_SEGMENT_BYTES) {
+            rollUnchecked();
+        }
+        active.add(object);
+        activeBytes += recordBytes;
+        size++;
+        if (activeBytes >= segmentBytes) {
+            rollUnchecked();
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    // Bytes written to segment files
+    public synchronized long spilledBytes() {
+        return spilledBytes;
+    }
+
+    // Newest entry with this id, or null. A spilled entry comes back as an untracked copy
+    // of its payload on the heap, independent of the mapping.
+    public synchronized MemoryLeakExamples.ExpensiveObject find(int id) {
+        for (int i = active.size() - 1; i >= 0; i--) {
+            if (active.get(i).getId() == id) {
+                return active.get(i);
+            }
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            ByteBuffer payload = segments.get(i).find(id);
+            if (payload != null) {
+                return MemoryLeakExamples.ExpensiveObject.untracked(id, HeapPayload.copyOf(payload));
+            }
+        }
+        return null;
+    }
+
+    // Sequential scan in insertion order without building ExpensiveObjects
+    public synchronized void scan(RecordVisitor visitor) {
+        for (Segment segment : segments) {
+            segment.scan(visitor);
+        }
+        for (MemoryLeakExamples.ExpensiveObject object : active) {
+            visitor.visit(object.getId(), object.payloadView());
+        }
+    }
+
+    // Spilled entries are copied back one at a time as they are visited, as in find()
+    @Override
+    public synchronized void forEach(Consumer<? super MemoryLeakExamples.ExpensiveObject> action) {
+        for (Segment segment : segments) {
+            segment.scan((id, payload) -> action.accept(
+                    MemoryLeakExamples.ExpensiveObject.untracked(id, HeapPayload.copyOf(payload))));
+        }
+        active.forEach(action);
+    }
+
+    // Deletes the segment files; their mappings are released when next collected
+    @Override
+    public synchronized void clear() {
+        for (Segment segment : segments) {
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                System.err.println("Could not delete log segment " + segment.file + ": " + e.getMessage());
+            }
+        }
+        segments.clear();
+        active.clear();
+        activeBytes = 0;
+        spilledBytes = 0;
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SegmentedLogRegistry{size=%d, segments=%d, spilled=%d bytes, active=%d bytes, dir=%s}",
+                size, segments.size(), spilledBytes, activeBytes, directory);
+    }
+
+    private void rollUnchecked() {
+        try {
+            roll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill log segment to " + directory, e);
+        }
+    }
+
+    // A roll that fails part way deletes its file, so the next roll can start over
+    private void roll() throws IOException {
+        Path file = directory.resolve(String.format("%020d" + SEGMENT_SUFFIX, nextSequence));
+        SegmentWriter writer = new SegmentWriter(active.size());
+        Segment segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (MemoryLeakExamples.ExpensiveObject object : active) {
+                writer.write(channel, object);
+            }
+            writer.flush(channel);
+            channel.force(true);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, writer.position);
+            segment = writer.toSegment(file, map);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        segments.add(segment);
+        spilledBytes += writer.position;
+        nextSequence += active.size();
+        active.clear();
+        activeBytes = 0;
+    }
+
+    // Maps the segments left in the directory, oldest first, and continues after them
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                if (sequenceOf(file) >= 0) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null); // zero-padded names sort by sequence
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            if (segment == null) {
+                Files.delete(file);
+                continue;
+            }
+            segments.add(segment);
+            spilledBytes += segment.length;
+            size += segment.records;
+            nextSequence = Math.max(nextSequence, sequenceOf(file) + segment.records);
+        }
+    }
+
+    // Sequence number in a segment file's name, or -1 if it is not a segment file
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        String digits = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+        if (digits.length() != 20 || !digits.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final ByteBuffer map;
+        final int length;
+        final int records;
+        final int[] blockPositions;
+        final int[] blockMinIds;
+        final int[] blockMaxIds;
+
+        Segment(Path file, ByteBuffer map, int records, int[] blockPositions, int[] blockMinIds,
+                int[] blockMaxIds) {
+            this.file = file;
+            this.map = map;
+            this.length = map.capacity();
+            this.records = records;
+            this.blockPositions = blockPositions;
+            this.blockMinIds = blockMinIds;
+            this.blockMaxIds = blockMaxIds;
+        }
+
+        // Maps an existing segment file and rebuilds its index from the records. Stops at
+        // the first record that does not fit in the file, which only a roll interrupted
+        // by a crash leaves behind; returns null if not even one record is complete.
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long fileSize = channel.size();
+                if (fileSize > MAX_SEGMENT_BYTES) {
+                    throw new IOException("Log segment larger than 1GB: " + file);
+                }
+                MappedByteBuffer whole = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+                int records = 0;
+                int position = 0;
+                while (whole.capacity() - position >= RECORD_HEADER_SIZE) {
+                    int length = whole.getInt(position + 4);
+                    if (length < 0 || length > whole.capacity() - position - RECORD_HEADER_SIZE) {
+                        break;
+                    }
+                    position += RECORD_HEADER_SIZE + length;
+                    records++;
+                }
+                if (records == 0) {
+                    return null;
+                }
+                if (position < whole.capacity()) {
+                    System.err.println("Log segment " + file + " ends in a partial record; keeping "
+                            + records + " records");
+                }
+                ByteBuffer map = whole.slice(0, position);
+                SegmentWriter index = new SegmentWriter(records);
+                int offset = 0;
+                for (int i = 0; i < records; i++) {
+                    int length = map.getInt(offset + 4);
+                    index.indexRecord(map.getInt(offset), length);
+                    offset += RECORD_HEADER_SIZE + length;
+                }
+                return index.toSegment(file, map);
+            }
+        }
+
+        // Payload view of the newest record with this id in the segment, or null
+        ByteBuffer find(int id) {
+            for (int block = blockPositions.length - 1; block >= 0; block--) {
+                if (id < blockMinIds[block] || id > blockMaxIds[block]) {
+                    continue;
+                }
+                int count = Math.min(INDEX_INTERVAL, records - block * INDEX_INTERVAL);
+                int position = blockPositions[block];
+                ByteBuffer found = null;
+                for (int i = 0; i < count; i++) {
+                    int length = map.getInt(position + 4);
+                    if (map.getInt(position) == id) {
+                        found = map.slice(position + RECORD_HEADER_SIZE, length);
+                    }
+                    position += RECORD_HEADER_SIZE + length;
+                }
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+
+        void scan(RecordVisitor visitor) {
+            int position = 0;
+            for (int i = 0; i < records; i++) {
+                int id = map.getInt(position);
+                int length = map.getInt(position + 4);
+                visitor.visit(id, map.slice(position + RECORD_HEADER_SIZE, length));
+                position += RECORD_HEADER_SIZE + length;
+            }
+        }
+    }
+
+    // Buffers records into the segment file and builds its sparse index on the way. The
+    // buffer is only allocated once the writer writes, not when it just rebuilds an index.
+    private static final class SegmentWriter {
+        ByteBuffer buffer;
+        final int records;
+        final int[] blockPositions;
+        final int[] blockMinIds;
+        final int[] blockMaxIds;
+        int written;
+        // At most MAX_SEGMENT_BYTES, which add() enforces, so block positions fit in an int
+        long position;
+
+        SegmentWriter(int records) {
+            this.records = records;
+            int blocks = (records + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            this.blockPositions = new int[blocks];
+            this.blockMinIds = new int[blocks];
+            this.blockMaxIds = new int[blocks];
+            Arrays.fill(blockMinIds, Integer.MAX_VALUE);
+            Arrays.fill(blockMaxIds, Integer.MIN_VALUE);
+        }
+
+        void write(FileChannel channel, MemoryLeakExamples.ExpensiveObject object) throws IOException {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            }
+            indexRecord(object.getId(), object.getPayloadSize());
+            if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                flush(channel);
+            }
+            buffer.putInt(object.getId()).putInt(object.getPayloadSize());
+            for (ByteBuffer segment : object.payloadSegments()) {
+                if (segment.remaining() <= buffer.remaining()) {
+                    buffer.put(segment);
+                } else {
+                    // Large segments bypass the buffer and go straight to the channel
+                    flush(channel);
+                    while (segment.hasRemaining()) {
+                        channel.write(segment);
+                    }
+                }
+            }
+        }
+
+        // Adds the next record to the index and advances past it
+        void indexRecord(int id, int payloadLength) {
+            if (position + RECORD_HEADER_SIZE + payloadLength > MAX_SEGMENT_BYTES) {
+                throw new IllegalStateException("Log segment would exceed 1GB");
+            }
+            int block = written / INDEX_INTERVAL;
+            if (written % INDEX_INTERVAL == 0) {
+                blockPositions[block] = (int) position;
+            }
+            blockMinIds[block] = Math.min(blockMinIds[block], id);
+            blockMaxIds[block] = Math.max(blockMaxIds[block], id);
+            position += RECORD_HEADER_SIZE + payloadLength;
+            written++;
+        }
+
+        void flush(FileChannel channel) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        Segment toSegment(Path file, ByteBuffer map) {
+            return new Segment(file, map, records, blockPositions, blockMinIds, blockMaxIds);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Coalesces concurrent loads of the same key: the first caller runs the loader and
+// every caller that arrives while it is in flight waits for (or is handed a future
+// of) that one result instead of building its own copy. Entries are removed as soon
+// as the load finishes, so this never retains values.
+final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    // Blocks until the value for key is loaded, by this thread or the current leader
+    public V load(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCount.increment();
+            return join(existing);
+        }
+        loadCount.increment();
+        try {
+            V value = loader.apply(key);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    // Returns the in-flight future for key, starting the load with starter if none is running
+    public CompletableFuture<V> loadAsync(K key,
+            Function<? super K, ? extends CompletableFuture<V>> starter) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCount.increment();
+            return existing;
+        }
+        loadCount.increment();
+        CompletableFuture<V> started;
+        try {
+            started = starter.apply(key);
+        } catch (RuntimeException | Error e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((value, error) -> {
+            inFlight.remove(key, future);
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(value);
+            }
+        });
+        return future;
+    }
+
+    public boolean isLoading(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    // Loads actually executed
+    public long loadCount() {
+        return loadCount.sum();
+    }
+
+    // Requests that piggybacked on another caller's load instead of running their own
+    public long coalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
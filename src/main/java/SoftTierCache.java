@@ -0,0 +1,262 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+
+// Two-tier cache: a strongly held hot tier bounded by weight, and an overflow tier of
+// SoftReferences that receives entries demoted from the hot tier. Soft entries give
+// extra hit rate while memory is plentiful; their budget shrinks as old-gen usage
+// crosses the pressure thresholds and drops to zero under critical pressure, so the
+// cache gives memory back before the GC is forced to clear every soft reference.
+// The budget is enforced on every write and promotion, and after every GC through
+// the monitor's listener, so the soft tier also shrinks while the cache is idle.
+// A soft hit promotes the entry back to the hot tier. Thread-safe.
+class SoftTierCache<K, V> {
+    // Old-gen usage thresholds and the share of the soft budget allowed above each
+    private static final double[] PRESSURE_THRESHOLDS = {0.60, 0.75, 0.90};
+    private static final double[] SOFT_BUDGET_FACTORS = {1.0, 0.5, 0.1, 0.0};
+
+    // Both access-ordered, eldest first; guarded by this
+    private final Map<K, HotEntry<V>> hot = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, KeyedSoftReference<K, V>> soft = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<V> clearedReferences = new ReferenceQueue<>();
+    private final SingleFlight<K, V> loads = new SingleFlight<>();
+    private final MemoryPressureMonitor pressure;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long hotMaximumWeight;
+    private final long softMaximumWeight;
+
+    private long hotWeight;
+    private long softWeight;
+    private long hotHits;
+    private long softHits;
+    private long misses;
+    private long softEvictions;
+
+    public SoftTierCache(long hotMaximumWeight, long softMaximumWeight,
+            Weigher<? super K, ? super V> weigher) {
+        this(hotMaximumWeight, softMaximumWeight, weigher, new MemoryPressureMonitor());
+    }
+
+    SoftTierCache(long hotMaximumWeight, long softMaximumWeight,
+            Weigher<? super K, ? super V> weigher, MemoryPressureMonitor pressure) {
+        this.hotMaximumWeight = hotMaximumWeight;
+        this.softMaximumWeight = softMaximumWeight;
+        this.weigher = weigher;
+        this.pressure = pressure;
+        pressure.addListener(new TrimAfterCollection(this, pressure));
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = lookup(key, true);
+        if (value != null) {
+            return value;
+        }
+        return loads.load(key, k -> {
+            V loaded = lookup(k, false);
+            if (loaded == null) {
+                loaded = loader.apply(k);
+                if (loaded != null) {
+                    put(k, loaded);
+                }
+            }
+            return loaded;
+        });
+    }
+
+    public synchronized void put(K key, V value) {
+        drainClearedReferences();
+        removeSoft(key);
+        int weight = weigher.weigh(key, value);
+        HotEntry<V> previous = hot.put(key, new HotEntry<>(value, weight));
+        if (previous != null) {
+            hotWeight -= previous.weight;
+        }
+        hotWeight += weight;
+        demoteFromHot();
+        trimSoft();
+    }
+
+    public synchronized void invalidate(K key) {
+        HotEntry<V> entry = hot.remove(key);
+        if (entry != null) {
+            hotWeight -= entry.weight;
+        }
+        removeSoft(key);
+    }
+
+    public synchronized void clear() {
+        hot.clear();
+        soft.clear();
+        hotWeight = 0;
+        softWeight = 0;
+    }
+
+    public synchronized int hotSize() {
+        return hot.size();
+    }
+
+    public synchronized int softSize() {
+        drainClearedReferences();
+        return soft.size();
+    }
+
+    public synchronized long hotWeight() {
+        return hotWeight;
+    }
+
+    public synchronized long softWeight() {
+        drainClearedReferences();
+        return softWeight;
+    }
+
+    // Soft budget currently allowed by memory pressure
+    public long effectiveSoftMaximumWeight() {
+        double usage = pressure.oldGenUsage();
+        int level = 0;
+        while (level < PRESSURE_THRESHOLDS.length && usage >= PRESSURE_THRESHOLDS[level]) {
+            level++;
+        }
+        return (long) (softMaximumWeight * SOFT_BUDGET_FACTORS[level]);
+    }
+
+    public synchronized long hotHitCount() {
+        return hotHits;
+    }
+
+    public synchronized long softHitCount() {
+        return softHits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    // Soft entries dropped to stay within the pressure-adjusted budget
+    public synchronized long softEvictionCount() {
+        return softEvictions;
+    }
+
+    private synchronized V lookup(K key, boolean recordMiss) {
+        drainClearedReferences();
+        HotEntry<V> entry = hot.get(key);
+        if (entry != null) {
+            hotHits++;
+            return entry.value;
+        }
+        KeyedSoftReference<K, V> ref = soft.get(key);
+        V value = (ref != null) ? ref.get() : null;
+        if (value == null) {
+            if (recordMiss) {
+                misses++;
+            }
+            return null;
+        }
+        // Promote back into the hot tier
+        softHits++;
+        soft.remove(key);
+        softWeight -= ref.weight;
+        hot.put(key, new HotEntry<>(value, ref.weight));
+        hotWeight += ref.weight;
+        demoteFromHot();
+        trimSoft();
+        return value;
+    }
+
+    // Pressure may have risen without any writes to trim on
+    private synchronized void onCollection() {
+        drainClearedReferences();
+        trimSoft();
+    }
+
+    private void demoteFromHot() {
+        Iterator<Map.Entry<K, HotEntry<V>>> it = hot.entrySet().iterator();
+        while (hotWeight > hotMaximumWeight && it.hasNext()) {
+            Map.Entry<K, HotEntry<V>> eldest = it.next();
+            it.remove();
+            HotEntry<V> entry = eldest.getValue();
+            hotWeight -= entry.weight;
+            soft.put(eldest.getKey(),
+                    new KeyedSoftReference<>(eldest.getKey(), entry.value, entry.weight, clearedReferences));
+            softWeight += entry.weight;
+        }
+    }
+
+    private void trimSoft() {
+        long maximum = effectiveSoftMaximumWeight();
+        Iterator<KeyedSoftReference<K, V>> it = soft.values().iterator();
+        while (softWeight > maximum && it.hasNext()) {
+            KeyedSoftReference<K, V> ref = it.next();
+            it.remove();
+            softWeight -= ref.weight;
+            softEvictions++;
+        }
+    }
+
+    private void removeSoft(K key) {
+        KeyedSoftReference<K, V> ref = soft.remove(key);
+        if (ref != null) {
+            softWeight -= ref.weight;
+        }
+    }
+
+    // Entries already removed or replaced released their weight when they left the map
+    private void drainClearedReferences() {
+        Reference<? extends V> cleared;
+        while ((cleared = clearedReferences.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            KeyedSoftReference<K, V> ref = (KeyedSoftReference<K, V>) cleared;
+            if (soft.remove(ref.key, ref)) {
+                softWeight -= ref.weight;
+            }
+        }
+    }
+
+    private static final class HotEntry<V> {
+        final V value;
+        final int weight;
+
+        HotEntry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    static final class KeyedSoftReference<K, V> extends SoftReference<V> {
+        final K key;
+        final int weight;
+
+        KeyedSoftReference(K key, V referent, int weight, ReferenceQueue<V> queue) {
+            super(referent, queue);
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    // Holds the cache weakly so that a shared, long-lived monitor cannot keep it alive,
+    // and takes itself off the monitor after the first GC that finds the cache gone
+    private static final class TrimAfterCollection implements DoubleConsumer {
+        private final WeakReference<SoftTierCache<?, ?>> cache;
+        private final MemoryPressureMonitor monitor;
+
+        TrimAfterCollection(SoftTierCache<?, ?> cache, MemoryPressureMonitor monitor) {
+            this.cache = new WeakReference<>(cache);
+            this.monitor = monitor;
+        }
+
+        @Override
+        public void accept(double usage) {
+            SoftTierCache<?, ?> target = cache.get();
+            if (target == null) {
+                monitor.removeListener(this);
+            } else {
+                target.onCollection();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Accumulates cache statistics with LongAdders so recording from many threads does not
+// contend on a shared counter. snapshot() turns the counters into an immutable
+// CacheStats; the snapshot is not atomic across counters, only each counter is.
+final class StatsCounter {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder[] evictionCounts = new LongAdder[RemovalCause.values().length];
+    private final LongAdder evictionWeight = new LongAdder();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    StatsCounter() {
+        for (int i = 0; i < evictionCounts.length; i++) {
+            evictionCounts[i] = new LongAdder();
+        }
+    }
+
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    public void recordLoadSuccess(long loadTimeNanos) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTimeNanos);
+        loadLatency.record(loadTimeNanos);
+    }
+
+    public void recordLoadFailure(long loadTimeNanos) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTimeNanos);
+        loadLatency.record(loadTimeNanos);
+    }
+
+    public void recordEviction(RemovalCause cause, int weight) {
+        evictionCounts[cause.ordinal()].increment();
+        evictionWeight.add(weight);
+    }
+
+    public long evictionCount(RemovalCause cause) {
+        return evictionCounts[cause.ordinal()].sum();
+    }
+
+    public long evictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    public CacheStats snapshot(long estimatedSize, long weightedSize) {
+        long[] evictions = new long[evictionCounts.length];
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = evictionCounts[i].sum();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(),
+                loadFailureCount.sum(), totalLoadTime.sum(), evictions, evictionWeight.sum(),
+                estimatedSize, weightedSize, loadLatency.snapshot());
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+
+// Timing loop shared by the multi-threaded throughput benchmarks. Starts the workers
+// together on a latch, lets each run its operation until the deadline (checking the
+// clock only every 4096 operations, so nanoTime stays off the measured path), and
+// reports operations per second over the whole run, including the finish step.
+final class ThroughputHarness {
+    // Added to every run so thread start-up does not eat into the measured seconds
+    private static final long WARM_UP_NANOS = 100_000_000L;
+
+    private ThroughputHarness() {
+    }
+
+    // operations builds thread t's operation, which is passed its own operation count;
+    // finish runs once every worker has stopped, e.g. to wait for a queue to drain
+    static double run(int threads, long seconds, IntFunction<LongConsumer> operations, Runnable finish)
+            throws InterruptedException {
+        LongAdder total = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L + WARM_UP_NANOS;
+        for (int t = 0; t < threads; t++) {
+            LongConsumer operation = operations.apply(t);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long count = 0;
+                    while ((count & 0xFFF) != 0 || System.nanoTime() < deadline) {
+                        operation.accept(count);
+                        count++;
+                    }
+                    total.add(count);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        finish.run();
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        return total.sum() / elapsedSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+// Source of monotonic nanosecond time for caches; tests and benchmarks can supply a
+// fake one to move time forward without sleeping.
+@FunctionalInterface
+interface Ticker {
+
+    long read();
+
+    static Ticker system() {
+        return System::nanoTime;
+    }
+}
@@ -0,0 +1,141 @@
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Registry that keeps entries for a sliding time window. Entries go into the bucket
+// for the current tick (e.g. one second or one minute); buckets are held oldest first
+// and, once a whole bucket has fallen out of the window, it is dropped wholesale with
+// its list, so expiry never visits individual entries or scans the registry. add() is
+// O(1) plus the amortized cost of dropping the buckets that expired since the last call.
+//
+// Retention is bucket-granular: an entry is kept for at least window - bucket and at
+// most window. Expiry is lazy and happens on the next call to any method; call
+// expire() from a scheduler to release memory while the registry is idle. Thread-safe.
+final class TimeWindowRegistry implements ObjectRegistry {
+    private final long bucketNanos;
+    private final long bucketsPerWindow;
+    private final Ticker ticker;
+
+    // Guarded by this; oldest first, ticks strictly increasing
+    private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
+    private int size;
+    private long evicted;
+    private long evictedBuckets;
+
+    TimeWindowRegistry(Duration window, Duration bucket) {
+        this(window, bucket, Ticker.system());
+    }
+
+    TimeWindowRegistry(Duration window, Duration bucket, Ticker ticker) {
+        if (bucket.isNegative() || bucket.isZero() || bucket.compareTo(window) > 0) {
+            throw new IllegalArgumentException("bucket must be positive and no longer than the window: "
+                    + bucket + " / " + window);
+        }
+        this.bucketNanos = bucket.toNanos();
+        this.bucketsPerWindow = (window.toNanos() + bucketNanos - 1) / bucketNanos;
+        this.ticker = ticker;
+    }
+
+    static TimeWindowRegistry perSecond(Duration window) {
+        return new TimeWindowRegistry(window, Duration.ofSeconds(1));
+    }
+
+    static TimeWindowRegistry perMinute(Duration window) {
+        return new TimeWindowRegistry(window, Duration.ofMinutes(1));
+    }
+
+    @Override
+    public synchronized void add(MemoryLeakExamples.ExpensiveObject object) {
+        currentBucket().entries.add(object);
+        size++;
+    }
+
+    @Override
+    public synchronized void addAll(List<? extends MemoryLeakExamples.ExpensiveObject> objects) {
+        currentBucket().entries.addAll(objects);
+        size += objects.size();
+    }
+
+    @Override
+    public synchronized int size() {
+        expire(ticker.read());
+        return size;
+    }
+
+    public synchronized int bucketCount() {
+        expire(ticker.read());
+        return buckets.size();
+    }
+
+    // Entries dropped because their bucket left the window, not counting clear()
+    public synchronized long evictedCount() {
+        return evicted;
+    }
+
+    public synchronized long evictedBucketCount() {
+        return evictedBuckets;
+    }
+
+    // Drops the buckets that have left the window
+    public synchronized void expire() {
+        expire(ticker.read());
+    }
+
+    @Override
+    public synchronized void clear() {
+        buckets.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized void forEach(Consumer<? super MemoryLeakExamples.ExpensiveObject> action) {
+        expire(ticker.read());
+        for (Bucket bucket : buckets) {
+            bucket.entries.forEach(action);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TimeWindowRegistry{size=%d, buckets=%d, bucket=%dms, window=%dms, evicted=%d "
+                        + "in %d buckets}",
+                size, buckets.size(), bucketNanos / 1_000_000, bucketsPerWindow * bucketNanos / 1_000_000,
+                evicted, evictedBuckets);
+    }
+
+    private Bucket currentBucket() {
+        long tick = expire(ticker.read());
+        Bucket last = buckets.peekLast();
+        if (last == null || last.tick != tick) {
+            last = new Bucket(tick);
+            buckets.addLast(last);
+        }
+        return last;
+    }
+
+    // Returns the current tick; only the oldest buckets are looked at, and each at most
+    // once over its lifetime
+    private long expire(long nanos) {
+        long tick = Math.floorDiv(nanos, bucketNanos);
+        long oldestKept = tick - bucketsPerWindow + 1;
+        for (Bucket oldest = buckets.peekFirst(); oldest != null && oldest.tick < oldestKept;
+                oldest = buckets.peekFirst()) {
+            buckets.pollFirst();
+            size -= oldest.entries.size();
+            evicted += oldest.entries.size();
+            evictedBuckets++;
+        }
+        return tick;
+    }
+
+    private static final class Bucket {
+        final long tick;
+        final List<MemoryLeakExamples.ExpensiveObject> entries = new ArrayList<>();
+
+        Bucket(long tick) {
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Hierarchical timing wheel holding BoundedCache entries by expiration time. Each
+// level is a ring of buckets whose span is a power of two (~1.07s, ~1.14m, ~1.22h,
+// ~1.63d, ~6.5d), so finding an entry's bucket is a shift and a mask. Advancing the
+// clock only visits the buckets whose tick has passed: entries found there are
+// either expired or cascaded down into a finer level. Scheduling, rescheduling and
+// removal are O(1), and advancing is amortized O(1) per entry, with no thread or
+// task per entry. Not thread-safe; BoundedCache calls it under its eviction lock.
+final class TimerWheel<K, V> {
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+            BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+            BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+    };
+    private static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    private final BoundedCache.Node<K, V>[][] wheel;
+    private long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long currentTimeNanos) {
+        wheel = (BoundedCache.Node<K, V>[][]) new BoundedCache.Node<?, ?>[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = (BoundedCache.Node<K, V>[]) new BoundedCache.Node<?, ?>[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                wheel[i][j] = newSentinel();
+            }
+        }
+        nanos = currentTimeNanos;
+    }
+
+    // Moves the clock to currentTimeNanos. Entries in passed buckets are offered to
+    // evictor, which returns false if the entry turned out not to be expired (its
+    // expirationTime having moved on), in which case it is rescheduled.
+    void advance(long currentTimeNanos, Predicate<BoundedCache.Node<K, V>> evictor) {
+        long previousTimeNanos = nanos;
+        nanos = currentTimeNanos;
+
+        // If the clock wrapped from negative to positive, shift both so ticks stay ordered
+        if ((previousTimeNanos < 0) && (currentTimeNanos > 0)) {
+            previousTimeNanos += Long.MAX_VALUE;
+            currentTimeNanos += Long.MAX_VALUE;
+        }
+
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = (previousTimeNanos >>> SHIFT[i]);
+            long currentTicks = (currentTimeNanos >>> SHIFT[i]);
+            long delta = (currentTicks - previousTicks);
+            if (delta <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, delta, evictor);
+        }
+    }
+
+    void schedule(BoundedCache.Node<K, V> node) {
+        BoundedCache.Node<K, V> sentinel = findBucket(node.expirationTime);
+        link(sentinel, node);
+    }
+
+    void reschedule(BoundedCache.Node<K, V> node) {
+        if (node.nextInTimerOrder != null) {
+            unlink(node);
+            schedule(node);
+        }
+    }
+
+    void deschedule(BoundedCache.Node<K, V> node) {
+        unlink(node);
+        node.nextInTimerOrder = null;
+        node.prevInTimerOrder = null;
+    }
+
+    void clear() {
+        for (BoundedCache.Node<K, V>[] buckets : wheel) {
+            for (BoundedCache.Node<K, V> sentinel : buckets) {
+                sentinel.prevInTimerOrder = sentinel;
+                sentinel.nextInTimerOrder = sentinel;
+            }
+        }
+    }
+
+    private void expire(int index, long previousTicks, long delta,
+            Predicate<BoundedCache.Node<K, V>> evictor) {
+        BoundedCache.Node<K, V>[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+
+        // A full rotation or more means every bucket at this level has to be visited
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+
+        for (int i = start; i < end; i++) {
+            BoundedCache.Node<K, V> sentinel = timerWheel[i & mask];
+            BoundedCache.Node<K, V> node = sentinel.nextInTimerOrder;
+            sentinel.prevInTimerOrder = sentinel;
+            sentinel.nextInTimerOrder = sentinel;
+
+            while (node != sentinel) {
+                BoundedCache.Node<K, V> next = node.nextInTimerOrder;
+                node.prevInTimerOrder = null;
+                node.nextInTimerOrder = null;
+
+                if (((node.expirationTime - nanos) > 0) || !evictor.test(node)) {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private BoundedCache.Node<K, V> findBucket(long time) {
+        long duration = time - nanos;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = (time >>> SHIFT[i]);
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    private static <K, V> void link(BoundedCache.Node<K, V> sentinel, BoundedCache.Node<K, V> node) {
+        node.prevInTimerOrder = sentinel.prevInTimerOrder;
+        node.nextInTimerOrder = sentinel;
+        sentinel.prevInTimerOrder.nextInTimerOrder = node;
+        sentinel.prevInTimerOrder = node;
+    }
+
+    private static <K, V> void unlink(BoundedCache.Node<K, V> node) {
+        BoundedCache.Node<K, V> next = node.nextInTimerOrder;
+        if (next != null) {
+            BoundedCache.Node<K, V> prev = node.prevInTimerOrder;
+            next.prevInTimerOrder = prev;
+            prev.nextInTimerOrder = next;
+        }
+    }
+
+    private static <K, V> BoundedCache.Node<K, V> newSentinel() {
+        BoundedCache.Node<K, V> sentinel = new BoundedCache.Node<>(null, null, 0);
+        sentinel.prevInTimerOrder = sentinel;
+        sentinel.nextInTimerOrder = sentinel;
+        return sentinel;
+    }
+
+    private static long ceilingPowerOfTwo(long x) {
+        return 1L << -Long.numberOfLeadingZeros(x - 1);
+    }
+}
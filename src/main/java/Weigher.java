@@ -0,0 +1,12 @@
+// Computes the weight of a cache entry. Caches bounded by maximumWeight evict until
+// the sum of their entries' weights fits the budget, so the unit is up to the caller
+// (for ExpensiveObject payloads it is bytes).
+@FunctionalInterface
+interface Weigher<K, V> {
+
+    int weigh(K key, V value);
+
+    static <K, V> Weigher<K, V> singleton() {
+        return (key, value) -> 1;
+    }
+}
@@ -0,0 +1,166 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedCacheTest {
+
+    @Test
+    void sizeBoundEvictsDownToMaximum() {
+        BoundedCache<Integer, Integer> cache = BoundedCache.<Integer, Integer>newBuilder()
+                .maximumSize(100)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+        assertEquals(1000 - cache.size(), cache.evictionCount());
+    }
+
+    // A key read often enough must survive a stream of one-hit keys; admission compares
+    // sketch frequencies, so this also exercises the sketch's periodic aging
+    @Test
+    void frequentKeySurvivesOneHitWonders() {
+        BoundedCache<Integer, Integer> cache = BoundedCache.<Integer, Integer>newBuilder()
+                .maximumSize(100)
+                .build();
+        for (int round = 0; round < 50; round++) {
+            cache.get(-1, key -> key);
+            for (int i = 0; i < 200; i++) {
+                cache.put(round * 1000 + i, i);
+            }
+        }
+        assertEquals(Integer.valueOf(-1), cache.getIfPresent(-1));
+    }
+
+    @Test
+    void weightBoundCountsWeightNotEntries() {
+        BoundedCache<Integer, String> cache = BoundedCache.<Integer, String>newBuilder()
+                .maximumWeight(100)
+                .weigher((key, value) -> value.length())
+                .build();
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, "0123456789");
+        }
+        assertTrue(cache.weightedSize() <= 100, "weightedSize " + cache.weightedSize());
+        assertTrue(cache.size() <= 10, "size " + cache.size());
+        assertEquals(10L * cache.size(), cache.weightedSize());
+        assertEquals(10L * cache.evictionCount(), cache.evictionWeight());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws InterruptedException {
+        BoundedCache<String, Object> cache = BoundedCache.<String, Object>newBuilder()
+                .maximumSize(10)
+                .build();
+        int threads = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        List<Object> results = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                Object value = cache.get("key", key -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new Object();
+                });
+                synchronized (results) {
+                    results.add(value);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cache.coalescedLoadCount() < threads - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.loadCount());
+        assertEquals(threads - 1, cache.coalescedLoadCount());
+        for (Object result : results) {
+            assertSame(results.get(0), result);
+        }
+    }
+
+    @Test
+    void refreshReplacesStaleValueInBackground() {
+        AtomicLong nanos = new AtomicLong();
+        List<Runnable> background = new ArrayList<>();
+        BoundedCache<String, String> cache = BoundedCache.<String, String>newBuilder()
+                .maximumSize(10)
+                .refreshAfterWrite(Duration.ofSeconds(1))
+                .executor(background::add)
+                .ticker(nanos::get)
+                .build();
+        cache.put("k", "old");
+        assertEquals("old", cache.get("k", key -> "unused"));
+        assertTrue(background.isEmpty());
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertEquals("old", cache.get("k", key -> "new"));
+        assertEquals("old", cache.get("k", key -> "newer"));
+        assertEquals(1, background.size());
+        background.remove(0).run();
+        assertEquals("new", cache.getIfPresent("k"));
+        assertEquals(1, cache.refreshCount());
+        assertEquals(0, cache.loadCount());
+    }
+
+    @Test
+    void failedRefreshKeepsCurrentValue() {
+        AtomicLong nanos = new AtomicLong();
+        BoundedCache<String, String> cache = BoundedCache.<String, String>newBuilder()
+                .maximumSize(10)
+                .refreshAfterWrite(Duration.ofSeconds(1))
+                .executor(Runnable::run)
+                .ticker(nanos::get)
+                .build();
+        cache.put("k", "current");
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertEquals("current", cache.get("k", key -> {
+            throw new IllegalStateException("backend down");
+        }));
+        assertEquals("current", cache.getIfPresent("k"));
+        assertEquals(1, cache.refreshFailureCount());
+    }
+
+    @Test
+    void entriesExpireAfterWrite() {
+        AtomicLong nanos = new AtomicLong();
+        BoundedCache<String, String> cache = BoundedCache.<String, String>newBuilder()
+                .maximumSize(10)
+                .expireAfterWrite(Duration.ofMinutes(1))
+                .ticker(nanos::get)
+                .build();
+        cache.put("a", "1");
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertEquals("1", cache.getIfPresent("a"));
+
+        nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+        assertNull(cache.getIfPresent("a"));
+        cache.put("b", "2");
+        assertEquals(1, cache.expirationCount());
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+
+    @Test
+    void releasedBufferIsReusedZeroFilled() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        BufferPool.PooledBuffer first = pool.acquire(1000);
+        assertEquals(1000, first.length());
+        assertEquals(1024, first.capacity());
+        byte[] array = first.array();
+        array[999] = 42;
+        first.release();
+        first.release();
+        assertThrows(IllegalStateException.class, first::array);
+
+        BufferPool.PooledBuffer second = pool.acquire(900);
+        assertSame(array, second.array());
+        assertEquals(0, second.array()[899]);
+        assertEquals(1, pool.allocationCount());
+        assertEquals(1, pool.magazineHitCount());
+        assertEquals(1, pool.releaseCount());
+        second.release();
+    }
+
+    @Test
+    void requestsAboveTheLargestClassAreNotPooled() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        int size = 8 * 1024 * 1024;
+        BufferPool.PooledBuffer buffer = pool.acquire(size);
+        assertEquals(size, buffer.capacity());
+        buffer.release();
+        pool.acquire(size).release();
+        assertEquals(2, pool.allocationCount());
+    }
+
+    @Test
+    void threadCacheIsCappedAndCanBeReturned() throws InterruptedException {
+        BufferPool pool = new BufferPool(16 * 1024, 64, 16 * 1024);
+        List<BufferPool.PooledBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            buffers.add(pool.acquire(4096));
+        }
+        buffers.forEach(BufferPool.PooledBuffer::release);
+        assertTrue(pool.trimmedCount() > 0, "nothing trimmed: " + pool);
+        pool.releaseThreadCache();
+
+        // Another thread finds the returned buffers in the depot instead of allocating
+        long allocations = pool.allocationCount();
+        Thread other = new Thread(() -> {
+            List<BufferPool.PooledBuffer> taken = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                taken.add(pool.acquire(4096));
+            }
+            taken.forEach(BufferPool.PooledBuffer::release);
+        });
+        other.start();
+        other.join();
+        assertEquals(allocations, pool.allocationCount());
+        assertTrue(pool.depotHitCount() > 0);
+    }
+
+    @Test
+    void unreleasedBufferIsReportedAsLeak() throws InterruptedException {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        pool.acquire(2048);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.leakCount() == 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.leakCount());
+    }
+}
@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CacheSnapshotTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsKeysIdsAndPayloads() throws IOException {
+        Map<String, MemoryLeakExamples.ExpensiveObject> entries = sampleEntries();
+        Path file = dir.resolve("cache.snapshot");
+        assertEquals(entries.size(), CacheSnapshot.write(file, sink -> entries.forEach(sink)));
+
+        Map<String, MemoryLeakExamples.ExpensiveObject> read = new LinkedHashMap<>();
+        assertEquals(entries.size(), CacheSnapshot.read(file, read::put));
+        assertEquals(entries.keySet(), read.keySet());
+        for (Map.Entry<String, MemoryLeakExamples.ExpensiveObject> entry : entries.entrySet()) {
+            MemoryLeakExamples.ExpensiveObject copy = read.get(entry.getKey());
+            assertEquals(entry.getValue().getId(), copy.getId());
+            assertArrayEquals(bytes(entry.getValue()), bytes(copy));
+        }
+    }
+
+    @Test
+    void corruptSnapshotLoadsNothing() throws IOException {
+        Map<String, MemoryLeakExamples.ExpensiveObject> entries = sampleEntries();
+        Path file = dir.resolve("cache.snapshot");
+        CacheSnapshot.write(file, sink -> entries.forEach(sink));
+        byte[] contents = Files.readAllBytes(file);
+        contents[contents.length / 2] ^= 0x5A;
+        Files.write(file, contents);
+
+        Map<String, MemoryLeakExamples.ExpensiveObject> read = new LinkedHashMap<>();
+        assertThrows(IOException.class, () -> CacheSnapshot.read(file, read::put));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        Map<String, MemoryLeakExamples.ExpensiveObject> entries = sampleEntries();
+        Path file = dir.resolve("cache.snapshot");
+        CacheSnapshot.write(file, sink -> entries.forEach(sink));
+        byte[] contents = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(contents, contents.length - 10));
+
+        Map<String, MemoryLeakExamples.ExpensiveObject> read = new LinkedHashMap<>();
+        assertThrows(IOException.class, () -> CacheSnapshot.read(file, read::put));
+        assertTrue(read.isEmpty());
+    }
+
+    private static Map<String, MemoryLeakExamples.ExpensiveObject> sampleEntries() {
+        Map<String, MemoryLeakExamples.ExpensiveObject> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] payload = new byte[1000 + i];
+            for (int j = 0; j < payload.length; j++) {
+                payload[j] = (byte) (i * 31 + j);
+            }
+            entries.put("key-" + i, MemoryLeakExamples.ExpensiveObject.untracked(i,
+                    HeapPayload.copyOf(ByteBuffer.wrap(payload))));
+        }
+        return entries;
+    }
+
+    private static byte[] bytes(MemoryLeakExamples.ExpensiveObject object) {
+        ByteBuffer view = object.payloadView();
+        byte[] data = new byte[view.remaining()];
+        view.get(data);
+        return data;
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkedPayloadTest {
+    private static final int PAGE = ChunkedPayload.PAGE_SIZE;
+
+    @Test
+    void bulkAccessCrossesPageBoundaries() {
+        ChunkedPayload payload = new ChunkedPayload(2 * PAGE + 100);
+        byte[] written = new byte[PAGE + 50];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = (byte) i;
+        }
+        payload.put(PAGE - 20, written, 0, written.length);
+        assertEquals(written[19], payload.get(PAGE - 1));
+        assertEquals(written[20], payload.get(PAGE));
+
+        byte[] read = new byte[written.length];
+        payload.get(PAGE - 20, read, 0, read.length);
+        assertArrayEquals(written, read);
+        assertThrows(IndexOutOfBoundsException.class, () -> payload.get(2 * PAGE + 100));
+        assertThrows(IndexOutOfBoundsException.class, () -> payload.get(2 * PAGE, new byte[200], 0, 200));
+    }
+
+    @Test
+    void segmentsCoverTheBytesInOrder() {
+        ChunkedPayload payload = new ChunkedPayload(2 * PAGE + 100);
+        payload.put(2 * PAGE + 99, (byte) 7);
+        ByteBuffer[] segments = payload.readOnlySegments();
+        assertEquals(3, segments.length);
+        assertEquals(PAGE, segments[0].remaining());
+        assertEquals(100, segments[2].remaining());
+        assertEquals(7, segments[2].get(99));
+        assertTrue(segments[0].isReadOnly());
+    }
+
+    @Test
+    void viewsOfSeveralPagesDoNotAliasEachOther() {
+        ChunkedPayload first = new ChunkedPayload(PAGE + 1);
+        ChunkedPayload second = new ChunkedPayload(PAGE + 1);
+        first.put(PAGE, (byte) 1);
+        second.put(PAGE, (byte) 2);
+
+        ByteBuffer firstView = first.readOnlyView();
+        ByteBuffer secondView = second.readOnlyView();
+        assertEquals(1, firstView.get(PAGE));
+        assertEquals(2, secondView.get(PAGE));
+        assertEquals(PAGE + 1, firstView.remaining());
+        assertThrows(ReadOnlyBufferException.class, () -> firstView.put(0, (byte) 3));
+    }
+
+    @Test
+    void singlePageViewReadsThroughToThePayload() {
+        ChunkedPayload payload = new ChunkedPayload(100);
+        ByteBuffer view = payload.readOnlyView();
+        payload.put(10, (byte) 5);
+        assertEquals(5, view.get(10));
+    }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class ColumnarStoreTest {
+
+    @Test
+    void latestRecordWinsForDuplicateIds() {
+        ColumnarStore store = new ColumnarStore(1024);
+        for (int i = 0; i < 5000; i++) {
+            store.addZeroed(i, 8);
+        }
+        int row = store.add(record(42, 3, (byte) 9));
+        assertEquals(row, store.rowOf(42));
+        assertEquals(3, store.payloadLength(row));
+        assertEquals(7, store.rowOf(7));
+        assertEquals(-1, store.rowOf(5000));
+        store.clear();
+    }
+
+    @Test
+    void payloadsNeverSpanTwoSlabs() {
+        ColumnarStore store = new ColumnarStore(1024);
+        store.addZeroed(1, 1000);
+        int row = store.add(record(2, 100, (byte) 5));
+        assertEquals(5, store.payloadByte(row, 99));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.payloadByte(row, 100));
+        assertThrows(IllegalArgumentException.class, () -> store.addZeroed(3, 1025));
+        store.clear();
+    }
+
+    @Test
+    void payloadCopiesStayValidAfterClear() {
+        ColumnarStore store = new ColumnarStore(1024);
+        int row = store.add(record(1, 16, (byte) 7));
+        ByteBuffer payload = store.payload(row);
+        byte[] copied = new byte[20];
+        assertEquals(16, store.copyPayload(row, copied, 4));
+        store.clear();
+
+        assertEquals(16, payload.remaining());
+        assertEquals(7, payload.get(15));
+        assertEquals(7, copied[19]);
+        assertEquals(0, copied[3]);
+        assertEquals(0, store.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> store.payload(row));
+    }
+
+    @Test
+    void cursorVisitsRowsInInsertionOrder() {
+        ColumnarStore store = new ColumnarStore(1024);
+        for (int i = 0; i < 10; i++) {
+            store.add(record(100 + i, 4, (byte) i));
+        }
+        ColumnarStore.Cursor cursor = store.cursor();
+        byte[] buffer = new byte[4];
+        int expected = 0;
+        while (cursor.next()) {
+            assertEquals(100 + expected, cursor.id());
+            cursor.copyPayload(buffer, 0);
+            assertEquals(expected, buffer[3]);
+            expected++;
+        }
+        assertEquals(10, expected);
+        store.clear();
+    }
+
+    // Record whose payload is size bytes of value
+    private static MemoryLeakExamples.ExpensiveObject record(int id, int size, byte value) {
+        HeapPayload payload = new HeapPayload(size);
+        for (int i = 0; i < size; i++) {
+            payload.put(i, value);
+        }
+        return MemoryLeakExamples.ExpensiveObject.untracked(id, payload);
+    }
+}
@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class CompressedColdTierTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong();
+
+    // The worker is scheduled an hour out, so only explicit compressIdle() calls run
+    private CompressedColdTier newTier() {
+        return new CompressedColdTier(Duration.ofSeconds(1), Duration.ofHours(1), now::get);
+    }
+
+    @Test
+    void idlePayloadsCompressAndInflateOnAccess() {
+        try (CompressedColdTier tier = newTier()) {
+            List<Payload> payloads = written(tier, 10);
+            now.set(SECOND / 2);
+            tier.compressIdle();
+            assertEquals(0, tier.compressionCount());
+
+            now.set(3 * SECOND / 2);
+            payloads.get(0).get(0);
+            tier.compressIdle();
+            assertEquals(9, tier.compressionCount());
+            long saved = tier.bytesSaved();
+            assertTrue(saved > 9 * 4000, "saved " + saved);
+            assertTrue(tier.compressionRatio() > 8);
+
+            assertEquals(5, payloads.get(5).get(0));
+            assertEquals(1, tier.inflationCount());
+            assertTrue(tier.bytesSaved() < saved);
+
+            // The payload read at 1.5s goes cold one idle time later
+            now.set(3 * SECOND);
+            tier.compressIdle();
+            assertEquals(11, tier.compressionCount());
+        }
+    }
+
+    @Test
+    void incompressibleAndUntouchedPayloadsStayAsTheyAre() {
+        try (CompressedColdTier tier = newTier()) {
+            Payload random = tier.newPayload(4096);
+            byte[] bytes = new byte[4096];
+            new Random(42).nextBytes(bytes);
+            random.put(0, bytes, 0, bytes.length);
+            Payload untouched = tier.newPayload(4096);
+
+            now.set(2 * SECOND);
+            tier.compressIdle();
+            assertEquals(0, tier.compressionCount());
+            assertEquals(0, tier.bytesSaved());
+            assertTrue(tier.toString().contains("incompressible=1"), tier.toString());
+            assertEquals(bytes[100], random.get(100));
+            assertEquals(0, untouched.get(100));
+        }
+    }
+
+    @Test
+    void collectedColdPayloadsLeaveTheAccounting() throws InterruptedException {
+        try (CompressedColdTier tier = newTier()) {
+            List<Payload> payloads = written(tier, 10);
+            now.set(2 * SECOND);
+            tier.compressIdle();
+            assertTrue(tier.bytesSaved() > 0);
+
+            payloads.clear();
+            long deadline = System.nanoTime() + 10 * SECOND;
+            while (tier.bytesSaved() != 0 && System.nanoTime() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+                tier.compressIdle();
+            }
+            assertEquals(0, tier.bytesSaved());
+        }
+    }
+
+    @Test
+    void coldPayloadsStillInflateAfterClose() {
+        CompressedColdTier tier = newTier();
+        List<Payload> payloads = written(tier, 2);
+        now.set(2 * SECOND);
+        tier.compressIdle();
+        assertEquals(2, tier.compressionCount());
+        tier.close();
+        assertEquals(1, payloads.get(1).get(0));
+        assertEquals(1, tier.inflationCount());
+    }
+
+    // Payloads of 4KB with their index written to the first byte
+    private static List<Payload> written(CompressedColdTier tier, int count) {
+        List<Payload> payloads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Payload payload = tier.newPayload(4096);
+            payload.put(0, (byte) i);
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Test helper: runs THREADS producer threads of PER_THREAD calls each and reports the
+// first failure when they are joined
+final class ConcurrentProducers {
+    static final int THREADS = 4;
+    static final int PER_THREAD = 50_000;
+
+    @FunctionalInterface
+    interface Producer {
+        void produce(int thread, int index);
+    }
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private ConcurrentProducers() {
+    }
+
+    static ConcurrentProducers start(Producer producer) {
+        ConcurrentProducers producers = new ConcurrentProducers();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        producer.produce(thread, i);
+                    }
+                } catch (Throwable e) {
+                    producers.failure.compareAndSet(null, e);
+                }
+            });
+            producers.threads.add(worker);
+            worker.start();
+        }
+        return producers;
+    }
+
+    boolean anyAlive() {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void join() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("producer failed", failure.get());
+        }
+    }
+
+    // Untracked and tiny, so the tests measure the registries rather than payloads
+    static MemoryLeakExamples.ExpensiveObject entry(int id) {
+        return MemoryLeakExamples.ExpensiveObject.untracked(id, new HeapPayload(1));
+    }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class DedupPayloadStoreTest {
+
+    @Test
+    void equalContentIsStoredOnce() {
+        DedupPayloadStore store = new DedupPayloadStore();
+        Payload first = store.intern(content("same bytes"));
+        Payload second = store.intern(content("same bytes"));
+        Payload other = store.intern(content("other bytes"));
+        assertEquals(2, store.uniqueCount());
+        assertEquals(3, store.internCount());
+        assertEquals(1, store.hitCount());
+        assertEquals(10, store.bytesSaved());
+
+        first.release();
+        second.release();
+        other.release();
+        assertEquals(0, store.uniqueCount());
+        assertEquals(0, store.logicalBytes());
+    }
+
+    @Test
+    void writeToSharedPayloadLeavesTheOtherSharerUnchanged() {
+        DedupPayloadStore store = new DedupPayloadStore();
+        Payload written = store.intern(content("abcd"));
+        Payload untouched = store.intern(content("abcd"));
+
+        written.put(0, (byte) 'x');
+        written.put(1, new byte[] {'y', 'z'}, 0, 2);
+        assertEquals('x', written.get(0));
+        assertEquals('z', written.get(2));
+        assertEquals('a', untouched.get(0));
+        assertEquals('c', untouched.get(2));
+        assertEquals(1, store.copyOnWriteCount());
+        assertEquals(1, store.uniqueCount());
+        assertEquals(4, store.logicalBytes());
+
+        // A fresh intern of the original content still finds the untouched copy
+        Payload again = store.intern(content("abcd"));
+        assertEquals('a', again.get(0));
+        assertEquals(2, store.hitCount());
+    }
+
+    @Test
+    void writeAfterReleaseStillCopies() {
+        DedupPayloadStore store = new DedupPayloadStore();
+        Payload released = store.intern(content("abcd"));
+        Payload kept = store.intern(content("abcd"));
+        released.release();
+        released.put(0, (byte) 'x');
+        assertEquals('a', kept.get(0));
+    }
+
+    @Test
+    void zerosShareContentWithInternedZeros() {
+        DedupPayloadStore store = new DedupPayloadStore();
+        Payload zeros = store.zeros(100_000);
+        Payload interned = store.intern(ByteBuffer.allocate(100_000));
+        Payload again = store.zeros(100_000);
+        assertEquals(100_000, zeros.size());
+        assertEquals(0, again.get(99_999));
+        assertEquals(1, store.uniqueCount());
+        assertEquals(2, store.hitCount());
+        assertEquals(0, store.zeros(0).size());
+        assertThrows(IllegalArgumentException.class, () -> store.zeros(-1));
+        interned.release();
+    }
+
+    private static ByteBuffer content(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.jupiter.api.Test;
+
+class EpochRegistryTest {
+
+    @Test
+    void reclaimsEverythingOnceReadersLeave() throws InterruptedException {
+        EpochRegistry registry = new EpochRegistry();
+        ConcurrentProducers producers = ConcurrentProducers.start((t, i) -> {
+            registry.add(ConcurrentProducers.entry(i));
+            if (t == 0 && i % 10_000 == 0) {
+                registry.clear();
+            }
+        });
+        while (producers.anyAlive()) {
+            int[] visited = {0};
+            registry.forEach(object -> {
+                assertNotNull(object);
+                visited[0]++;
+            });
+            assertTrue(visited[0] <= ConcurrentProducers.THREADS * ConcurrentProducers.PER_THREAD);
+        }
+        producers.join();
+
+        int[] visited = {0};
+        registry.forEach(object -> visited[0]++);
+        assertEquals(registry.size(), visited[0]);
+        registry.reclaim();
+        assertTrue(registry.retiredArrayCount() > 0);
+        assertEquals(0, registry.pendingBytes());
+    }
+
+    @Test
+    void arrayRetiredDuringAScanWaitsForTheReader() {
+        EpochRegistry registry = new EpochRegistry();
+        for (int id = 0; id < 10; id++) {
+            registry.add(ConcurrentProducers.entry(id));
+        }
+        int[] visited = {0};
+        registry.forEach(object -> {
+            if (visited[0]++ == 0) {
+                registry.clear();
+                registry.reclaim();
+                assertTrue(registry.pendingBytes() > 0);
+            }
+        });
+        // The scan kept seeing the snapshot it started with
+        assertEquals(10, visited[0]);
+        assertEquals(0, registry.size());
+        registry.reclaim();
+        assertEquals(0, registry.pendingBytes());
+    }
+
+    @Test
+    void registryIsCollectableAfterAThreadScannedIt() throws InterruptedException {
+        EpochRegistry registry = new EpochRegistry();
+        registry.add(ConcurrentProducers.entry(1));
+        registry.forEach(object -> { });
+        WeakReference<EpochRegistry> collected = new WeakReference<>(registry);
+        registry = null;
+        for (int i = 0; i < 20 && collected.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(collected.get());
+    }
+}
@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+class IngestQueueTest {
+
+    @Test
+    void deliversEverythingAcrossClears() throws InterruptedException {
+        List<MemoryLeakExamples.ExpensiveObject> sink = new ArrayList<>();
+        long[] cleared = {0};
+        try (IngestQueue<MemoryLeakExamples.ExpensiveObject> queue = new IngestQueue<>(1024, 64, sink::addAll)) {
+            ConcurrentProducers producers = ConcurrentProducers.start(
+                    (t, i) -> queue.offer(ConcurrentProducers.entry(i)));
+            while (producers.anyAlive()) {
+                // Runs on the drainer, so the sink list keeps a single writer
+                queue.execute(() -> {
+                    cleared[0] += sink.size();
+                    sink.clear();
+                });
+            }
+            producers.join();
+            queue.flush();
+            queue.execute(() -> { });
+
+            long expected = (long) ConcurrentProducers.THREADS * ConcurrentProducers.PER_THREAD;
+            assertEquals(expected, cleared[0] + sink.size());
+            assertEquals(expected, queue.deliveredCount());
+            assertEquals(0, queue.pendingCount());
+        }
+    }
+
+    @Test
+    void offersRacingCloseAreDeliveredOrRejected() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            LongAdder received = new LongAdder();
+            LongAdder accepted = new LongAdder();
+            IngestQueue<Integer> queue = new IngestQueue<>(64, 16, batch -> received.add(batch.size()));
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread producer = new Thread(() -> {
+                    try {
+                        for (int i = 0; ; i++) {
+                            queue.offer(i);
+                            accepted.increment();
+                        }
+                    } catch (IllegalStateException e) {
+                        // closed
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            Thread.sleep(5);
+            queue.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            // Returns at once rather than waiting on the stopped drainer
+            queue.flush();
+            assertEquals(accepted.sum(), received.sum());
+            assertEquals(accepted.sum(), queue.offeredCount());
+            assertEquals(0, queue.pendingCount());
+            assertThrows(IllegalStateException.class, () -> queue.execute(() -> { }));
+        }
+    }
+
+    @Test
+    void sinkErrorStopsTheQueueAndFailsLaterCalls() {
+        IngestQueue<Integer> queue = new IngestQueue<>(16, 4, batch -> {
+            throw new OutOfMemoryError("test");
+        });
+        queue.offer(1);
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, queue::flush);
+        assertTrue(thrown.getCause() instanceof OutOfMemoryError);
+        assertThrows(IllegalStateException.class, () -> queue.offer(2));
+        queue.close();
+    }
+
+    @Test
+    void sinkRuntimeExceptionDropsOnlyItsBatch() {
+        List<Integer> delivered = new ArrayList<>();
+        try (IngestQueue<Integer> queue = new IngestQueue<>(16, 1, batch -> {
+            if (batch.get(0) == 2) {
+                throw new IllegalArgumentException("bad element");
+            }
+            delivered.addAll(batch);
+        })) {
+            for (int i = 1; i <= 3; i++) {
+                queue.offer(i);
+            }
+            queue.flush();
+            queue.execute(() -> assertEquals(List.of(1, 3), delivered));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class IntKeyedCacheTest {
+
+    @Test
+    void removingFromAClusterKeepsTheRestReachable() {
+        IntKeyedCache<Integer> cache = IntKeyedCache.withMaximumSize(1 << 16);
+        for (int key = 0; key < 64; key++) {
+            cache.put(key, key);
+        }
+        for (int key = 0; key < 64; key += 2) {
+            assertEquals(Integer.valueOf(key), cache.invalidate(key));
+        }
+        for (int key = 0; key < 64; key++) {
+            if (key % 2 == 0) {
+                assertNull(cache.getIfPresent(key));
+            } else {
+                assertEquals(Integer.valueOf(key), cache.getIfPresent(key));
+            }
+        }
+        assertEquals(32, cache.size());
+    }
+
+    // Backward-shift deletion must never strand an entry behind a hole in its probe
+    // sequence; compare against a HashMap across many inserts and removals
+    @Test
+    void randomPutsAndRemovalsMatchAHashMap() {
+        IntKeyedCache<Integer> cache = IntKeyedCache.withMaximumSize(1 << 16);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(4096) - 2048;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), cache.invalidate(key));
+            } else {
+                cache.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        for (int key = -2048; key < 2048; key++) {
+            assertEquals(expected.get(key), cache.getIfPresent(key), "key " + key);
+        }
+        assertEquals(expected.size(), cache.size());
+    }
+
+    @Test
+    void rejectsNullValues() {
+        IntKeyedCache<String> cache = IntKeyedCache.withMaximumSize(10);
+        assertThrows(NullPointerException.class, () -> cache.put(1, null));
+        assertNull(cache.get(2, key -> null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void loaderRunsOutsideTheMonitor() throws InterruptedException {
+        IntKeyedCache<String> cache = IntKeyedCache.withMaximumSize(10);
+        cache.put(1, "one");
+        List<String> seenDuringLoad = new ArrayList<>();
+        String loaded = cache.get(2, key -> {
+            Thread reader = new Thread(() -> seenDuringLoad.add(cache.getIfPresent(1)));
+            reader.start();
+            try {
+                reader.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            assertFalse(reader.isAlive(), "lookup blocked behind the loader");
+            return "two";
+        });
+        assertEquals("two", loaded);
+        assertEquals(List.of("one"), seenDuringLoad);
+        assertEquals("two", cache.getIfPresent(2));
+    }
+
+    @Test
+    void entriesExpireAfterWrite() {
+        AtomicLong nanos = new AtomicLong();
+        IntKeyedCache<String> cache = IntKeyedCache.<String>newBuilder()
+                .maximumSize(10)
+                .expireAfterWrite(Duration.ofSeconds(10))
+                .ticker(nanos::get)
+                .build();
+        cache.put(1, "a");
+        nanos.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertEquals("a", cache.getIfPresent(1));
+        nanos.addAndGet(Duration.ofSeconds(5).toNanos());
+        assertNull(cache.getIfPresent(1));
+        assertEquals(1, cache.expirationCount());
+    }
+
+    @Test
+    void readsExtendExpireAfterAccess() {
+        AtomicLong nanos = new AtomicLong();
+        IntKeyedCache<String> cache = IntKeyedCache.<String>newBuilder()
+                .maximumSize(10)
+                .expireAfterAccess(Duration.ofSeconds(10))
+                .ticker(nanos::get)
+                .build();
+        cache.put(1, "read");
+        cache.put(2, "idle");
+        for (int i = 0; i < 3; i++) {
+            nanos.addAndGet(Duration.ofSeconds(6).toNanos());
+            assertEquals("read", cache.getIfPresent(1));
+        }
+        assertNull(cache.getIfPresent(2));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.expirationCount());
+    }
+
+    @Test
+    void refreshReplacesStaleValueInBackground() {
+        AtomicLong nanos = new AtomicLong();
+        List<Runnable> background = new ArrayList<>();
+        IntKeyedCache<String> cache = IntKeyedCache.<String>newBuilder()
+                .maximumSize(10)
+                .refreshAfterWrite(Duration.ofSeconds(1))
+                .executor(background::add)
+                .ticker(nanos::get)
+                .build();
+        cache.put(1, "old");
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertEquals("old", cache.get(1, key -> "new"));
+        assertEquals("old", cache.get(1, key -> "newer"));
+        assertEquals(1, background.size());
+        background.remove(0).run();
+        assertEquals("new", cache.getIfPresent(1));
+        assertEquals(1, cache.refreshCount());
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        cache.get(1, key -> {
+            throw new IllegalStateException("backend down");
+        });
+        background.remove(0).run();
+        assertEquals("new", cache.getIfPresent(1));
+        assertEquals(1, cache.refreshFailureCount());
+        assertTrue(background.isEmpty());
+    }
+}
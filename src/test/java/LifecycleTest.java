@@ -0,0 +1,40 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LifecycleTest {
+    private static final class Owner {
+    }
+
+    private static final class Dropped {
+    }
+
+    @Test
+    void closedRegistrationIsNotCountedAsReclaimed() {
+        Owner owner = new Owner();
+        Lifecycle.Registration registration = Lifecycle.register(owner, () -> { });
+        registration.close();
+        registration.close();
+        assertEquals(1, Lifecycle.closedCount(Owner.class));
+        assertEquals(0, Lifecycle.reclaimedCount(Owner.class));
+        assertEquals(0, Lifecycle.liveCount(Owner.class));
+    }
+
+    @Test
+    void reclamationDelayIsMeasuredFromTheClearingCollection() throws InterruptedException {
+        // Sleeping before the GC makes the age far longer than any plausible delay
+        Lifecycle.register(new Dropped(), () -> { });
+        Thread.sleep(500);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Lifecycle.reclaimedCount(Dropped.class) == 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, Lifecycle.reclaimedCount(Dropped.class));
+        long delay = Lifecycle.reclamationDelayNanos(Dropped.class, 1.0);
+        assertTrue(delay < TimeUnit.MILLISECONDS.toNanos(400), "delay " + delay);
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapPayloadTest {
+
+    @Test
+    void releaseFreesOnceAndFailsLaterAccess() {
+        long reserved = OffHeapPayload.reservedBytes();
+        long explicit = OffHeapPayload.explicitReleaseCount();
+        OffHeapPayload payload = new OffHeapPayload(4096);
+        payload.put(10, (byte) 7);
+        assertEquals(7, payload.get(10));
+        assertEquals(reserved + 4096, OffHeapPayload.reservedBytes());
+
+        payload.release();
+        payload.release();
+        assertTrue(payload.isReleased());
+        assertEquals(reserved, OffHeapPayload.reservedBytes());
+        assertEquals(explicit + 1, OffHeapPayload.explicitReleaseCount());
+        assertThrows(IllegalStateException.class, () -> payload.get(10));
+        assertThrows(IllegalStateException.class, payload::readOnlyView);
+    }
+
+    // The Cleaner must only drop the buffer: a view still in use keeps the memory alive
+    @Test
+    void viewOutlivesCollectedPayload() throws InterruptedException {
+        long cleaned = OffHeapPayload.cleanerReleaseCount();
+        ByteBuffer view = viewOfUnreachablePayload();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (OffHeapPayload.cleanerReleaseCount() == cleaned && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(OffHeapPayload.cleanerReleaseCount() > cleaned, "payload was never cleaned");
+        for (int i = 0; i < view.capacity(); i++) {
+            assertEquals((byte) i, view.get(i));
+        }
+    }
+
+    @Test
+    void viewIsReadOnly() {
+        OffHeapPayload payload = new OffHeapPayload(16);
+        try {
+            ByteBuffer view = payload.readOnlyView();
+            assertTrue(view.isReadOnly());
+            assertFalse(payload.isReleased());
+        } finally {
+            payload.release();
+        }
+    }
+
+    private static ByteBuffer viewOfUnreachablePayload() {
+        OffHeapPayload payload = new OffHeapPayload(1 << 16);
+        for (int i = 0; i < payload.size(); i++) {
+            payload.put(i, (byte) i);
+        }
+        return payload.readOnlyView();
+    }
+}
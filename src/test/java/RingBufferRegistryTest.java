@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferRegistryTest {
+
+    @Test
+    void survivesConcurrentAddClearAndForEach() throws InterruptedException {
+        RingBufferRegistry registry = new RingBufferRegistry(64);
+        ConcurrentProducers producers = ConcurrentProducers.start(
+                (t, i) -> registry.add(ConcurrentProducers.entry(t * ConcurrentProducers.PER_THREAD + i)));
+        int rounds = 0;
+        while (producers.anyAlive()) {
+            int[] visited = {0};
+            registry.forEach(object -> {
+                assertNotNull(object);
+                visited[0]++;
+            });
+            assertTrue(visited[0] <= registry.capacity());
+            if (++rounds % 16 == 0) {
+                registry.clear();
+            }
+        }
+        producers.join();
+
+        int[] visited = {0};
+        registry.forEach(object -> visited[0]++);
+        assertEquals(registry.size(), visited[0]);
+        assertEquals(registry.addedCount(),
+                registry.size() + registry.overwrittenCount() + registry.droppedCount());
+    }
+
+    @Test
+    void visitsNewestEntriesOldestFirst() {
+        RingBufferRegistry registry = new RingBufferRegistry(64);
+        for (int id = 0; id < 1000; id++) {
+            registry.add(ConcurrentProducers.entry(id));
+        }
+        List<Integer> ids = new ArrayList<>();
+        registry.forEach(object -> ids.add(object.getId()));
+        assertEquals(64, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(1000 - 64 + i, (int) ids.get(i));
+        }
+    }
+
+    @Test
+    void clearEmptiesWithoutResettingCounts() {
+        RingBufferRegistry registry = new RingBufferRegistry(8);
+        for (int id = 0; id < 10; id++) {
+            registry.add(ConcurrentProducers.entry(id));
+        }
+        registry.clear();
+        int[] visited = {0};
+        registry.forEach(object -> visited[0]++);
+        assertEquals(0, visited[0]);
+        assertEquals(0, registry.size());
+        assertEquals(10, registry.addedCount());
+    }
+}
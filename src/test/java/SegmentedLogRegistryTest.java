@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedLogRegistryTest {
+    // 8-byte header + 92-byte payload: ten records fill a 1000-byte segment
+    private static final int PAYLOAD_SIZE = 92;
+    private static final int SEGMENT_BYTES = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopeningMapsSegmentsAndContinuesTheSequence() throws IOException {
+        SegmentedLogRegistry registry = new SegmentedLogRegistry(dir, SEGMENT_BYTES);
+        addRange(registry, 0, 95);
+        assertEquals(9, registry.segmentCount());
+        assertEquals(95, registry.size());
+
+        // The five records still in the active segment were never written
+        SegmentedLogRegistry reopened = new SegmentedLogRegistry(dir, SEGMENT_BYTES);
+        assertEquals(90, reopened.size());
+        assertEquals(9, reopened.segmentCount());
+        assertEquals(9000, reopened.spilledBytes());
+        assertEquals(3, reopened.find(3).getPayload().get(0));
+        assertEquals(89, reopened.find(89).getPayload().get(PAYLOAD_SIZE - 1));
+        assertNull(reopened.find(94));
+
+        addRange(reopened, 100, 110);
+        assertTrue(Files.exists(segment(90)));
+        assertEquals(100, reopened.size());
+    }
+
+    @Test
+    void truncatedSegmentKeepsItsCompleteRecords() throws IOException {
+        SegmentedLogRegistry registry = new SegmentedLogRegistry(dir, SEGMENT_BYTES);
+        addRange(registry, 0, 20);
+        try (FileChannel channel = FileChannel.open(segment(10), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 50);
+        }
+        // Too short to hold one record, as left by a crash right after creating it
+        Files.write(segment(20), new byte[3]);
+
+        SegmentedLogRegistry reopened = new SegmentedLogRegistry(dir, SEGMENT_BYTES);
+        assertFalse(Files.exists(segment(20)));
+        assertEquals(19, reopened.size());
+        assertEquals(2, reopened.segmentCount());
+        assertEquals(18, reopened.find(18).getPayload().get(0));
+        assertNull(reopened.find(19));
+
+        addRange(reopened, 20, 30);
+        assertTrue(Files.exists(segment(19)));
+        assertEquals(29, reopened.size());
+    }
+
+    @Test
+    void scanVisitsSegmentsThenTheActiveSegmentInOrder() throws IOException {
+        SegmentedLogRegistry registry = new SegmentedLogRegistry(dir, SEGMENT_BYTES);
+        addRange(registry, 0, 25);
+        List<Integer> ids = new ArrayList<>();
+        registry.scan((id, payload) -> {
+            assertEquals(PAYLOAD_SIZE, payload.remaining());
+            assertEquals((byte) id, payload.get(0));
+            ids.add(id);
+        });
+        assertEquals(25, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, (int) ids.get(i));
+        }
+
+        registry.clear();
+        assertEquals(0, registry.size());
+        assertNull(registry.find(3));
+        assertFalse(Files.exists(segment(0)));
+    }
+
+    // Records with ids from (inclusive) to to (exclusive), payload filled with the id
+    private static void addRange(SegmentedLogRegistry registry, int from, int to) {
+        for (int id = from; id < to; id++) {
+            HeapPayload payload = new HeapPayload(PAYLOAD_SIZE);
+            for (int i = 0; i < PAYLOAD_SIZE; i++) {
+                payload.put(i, (byte) id);
+            }
+            registry.add(MemoryLeakExamples.ExpensiveObject.untracked(id, payload));
+        }
+    }
+
+    private Path segment(long sequence) {
+        return dir.resolve(String.format("%020d.log", sequence));
+    }
+}
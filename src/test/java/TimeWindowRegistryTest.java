@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class TimeWindowRegistryTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong();
+    private final TimeWindowRegistry registry =
+            new TimeWindowRegistry(Duration.ofSeconds(10), Duration.ofSeconds(1), now::get);
+
+    @Test
+    void wholeBucketsExpireOnceTheyLeaveTheWindow() {
+        addIds(0, 3);
+        now.set(500 * MILLI);
+        addIds(3, 5);
+        now.set(5000 * MILLI);
+        addIds(5, 6);
+        assertEquals(2, registry.bucketCount());
+
+        now.set(9999 * MILLI);
+        assertEquals(6, registry.size());
+        assertEquals(0, registry.evictedCount());
+
+        // Entries added at 0.5s go with their bucket at 10s, after 9.5s rather than 10s
+        now.set(10_000 * MILLI);
+        assertEquals(1, registry.size());
+        assertEquals(5, registry.evictedCount());
+        assertEquals(1, registry.evictedBucketCount());
+        assertEquals(List.of(5), ids());
+
+        now.set(15_000 * MILLI);
+        registry.expire();
+        assertEquals(0, registry.bucketCount());
+        assertEquals(6, registry.evictedCount());
+        assertEquals(2, registry.evictedBucketCount());
+    }
+
+    @Test
+    void forEachVisitsOldestFirstAndClearIsNotEviction() {
+        for (int second = 0; second < 5; second++) {
+            now.set(second * 1000 * MILLI);
+            addIds(second * 10, second * 10 + 2);
+        }
+        assertEquals(List.of(0, 1, 10, 11, 20, 21, 30, 31, 40, 41), ids());
+
+        registry.clear();
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.evictedCount());
+    }
+
+    @Test
+    void rejectsBucketsLongerThanTheWindow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimeWindowRegistry(Duration.ofSeconds(1), Duration.ofSeconds(2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimeWindowRegistry(Duration.ofSeconds(1), Duration.ZERO));
+    }
+
+    private void addIds(int from, int to) {
+        for (int id = from; id < to; id++) {
+            registry.add(MemoryLeakExamples.ExpensiveObject.untracked(id, new HeapPayload(1)));
+        }
+    }
+
+    private List<Integer> ids() {
+        List<Integer> ids = new ArrayList<>();
+        registry.forEach(object -> ids.add(object.getId()));
+        return ids;
+    }
+}